@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2022 Oracle and/or its affiliates. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0,
+ * or the Eclipse Distribution License v. 1.0 which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR BSD-3-Clause
+ */
+
+package org.eclipse.persistence.build;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generation of persistence.xml and ejb-jar.xml from a persistence.xml of {@code units} persistence units
+ * with {@code runners} test runners, by the XSL transformations and by the streaming generator, and the check
+ * of descriptors which are up-to-date.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DescriptorGeneratorBenchmark {
+
+    @Param({"1", "50"})
+    public int units;
+
+    @Param({"1", "8"})
+    public int runners;
+
+    @Param({"XSLT", "STAX"})
+    public String engine;
+
+    private Path dir;
+    private DescriptorGenerator generator;
+    private final Map<String, Object> options = new HashMap<>();
+
+    @Setup
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("descriptor-benchmark");
+        Path source = dir.resolve("persistence.xml");
+        Fixtures.write(source, Fixtures.persistenceXml(units));
+        generator = new DescriptorGenerator(source, Fixtures.log());
+        generator.streaming("STAX".equals(engine));
+        List<String> names = new ArrayList<>(List.of("TestRunner", "GenericTestRunner"));
+        for (int i = 1; names.size() < runners; i++) {
+            names.add("TestRunner" + i);
+        }
+        options.put("generator.id", "benchmark");
+        options.put("data-source-type", "jta-data-source");
+        options.put("data-source-name", "jdbc/EclipseLinkDS");
+        options.put("db.platform", "org.eclipse.persistence.platform.database.OraclePlatform");
+        options.put("server.platform", "WebLogic");
+        options.put("server.weaving", "static");
+        options.put("testRunners", String.join(" ", names.subList(0, runners)));
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        Fixtures.delete(dir);
+    }
+
+    @State(Scope.Thread)
+    public static class Changed {
+
+        @Setup(Level.Invocation)
+        public void invalidate(DescriptorGeneratorBenchmark b) throws Exception {
+            Files.deleteIfExists(b.dir.resolve("generated.fingerprint"));
+        }
+    }
+
+    @Benchmark
+    public int generate(Changed changed) throws Exception {
+        return generator.generate(dir.resolve("generated"), options);
+    }
+
+    @Benchmark
+    public int upToDate() throws Exception {
+        return generator.generate(dir.resolve("generated"), options);
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2022 Oracle and/or its affiliates. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0,
+ * or the Eclipse Distribution License v. 1.0 which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR BSD-3-Clause
+ */
+
+package org.eclipse.persistence.build;
+
+import org.codehaus.plexus.util.AbstractScanner;
+import org.codehaus.plexus.util.SelectorUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matching of entry names of a framework jar by {@link EntryMatcher} and by {@link SelectorUtils#matchPath}
+ * applied to each pattern: {@code excludes} are the default excludes applied to every entry of an archive,
+ * {@code framework} is the default filter of the framework content.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EntryMatcherBenchmark {
+
+    private static final int NAMES = 5000;
+
+    @Param({"excludes", "framework"})
+    public String filter;
+
+    private String[] includes;
+    private String[] excludes;
+    private EntryMatcher matcher;
+    private final List<String> names = new ArrayList<>();
+
+    @Setup
+    public void setUp() {
+        if ("excludes".equals(filter)) {
+            includes = new String[0];
+            excludes = AbstractScanner.DEFAULTEXCLUDES;
+        } else {
+            includes = new String[] {"org/eclipse/persistence/testing/**", "META-INF/**"};
+            excludes = new String[] {"%regex[.*TestRunner[0-9].*]", "**/*.jar"};
+        }
+        matcher = EntryMatcher.of(includes, excludes);
+        for (int i = 0; i < NAMES; i++) {
+            names.add(Fixtures.RUNNERS_PACKAGE.replace("server/", "p" + i % 50 + "/") + "Test" + i + ".class");
+        }
+        names.addAll(Fixtures.runners(6));
+        names.add("META-INF/MANIFEST.MF");
+        names.add("META-INF/services/org.eclipse.persistence.testing.framework.Service");
+        names.add("lib/model.jar");
+    }
+
+    @Benchmark
+    public int entryMatcher() {
+        int count = 0;
+        for (String name : names) {
+            if (matcher.matches(name)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int selectorUtils() {
+        int count = 0;
+        for (String name : names) {
+            if ((includes.length == 0 || matchesAny(includes, name)) && !matchesAny(excludes, name)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static boolean matchesAny(String[] patterns, String name) {
+        for (String pattern : patterns) {
+            if (SelectorUtils.matchPath(pattern, name, "/", true)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
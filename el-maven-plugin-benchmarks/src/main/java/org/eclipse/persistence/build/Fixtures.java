@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2022 Oracle and/or its affiliates. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0,
+ * or the Eclipse Distribution License v. 1.0 which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR BSD-3-Clause
+ */
+
+package org.eclipse.persistence.build;
+
+import org.apache.maven.monitor.logging.DefaultLog;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Synthetic inputs of the benchmarks, the same for every run.
+ */
+final class Fixtures {
+
+    static final String RUNNERS_PACKAGE = "org/eclipse/persistence/testing/framework/jpa/server/";
+
+    private Fixtures() {
+    }
+
+    /**
+     * Log of warnings and errors, progress of the plugin is not measured.
+     */
+    static Log log() {
+        return new DefaultLog(new ConsoleLogger(Logger.LEVEL_WARN, "benchmark"));
+    }
+
+    /**
+     * Returns content looking like a class file of the given size, half of it compressible.
+     */
+    static byte[] content(Random random, int size) {
+        byte[] content = new byte[size];
+        random.nextBytes(content);
+        for (int i = 0; i < size / 2; i++) {
+            content[i] = (byte) ('a' + i % 16);
+        }
+        return content;
+    }
+
+    /**
+     * Writes a jar of the given number of classes spread over packages of 50 classes, with the given entries added.
+     */
+    static Path jar(Path file, String prefix, int classes, int size, List<String> extra) throws IOException {
+        Random random = new Random(file.getFileName().toString().hashCode());
+        Files.createDirectories(file.getParent());
+        try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(file))) {
+            for (int i = 0; i < classes; i++) {
+                zos.putNextEntry(new ZipEntry(String.format("%sp%d/C%d.class", prefix, i / 50, i)));
+                zos.write(content(random, size));
+                zos.closeEntry();
+            }
+            for (String name : extra) {
+                zos.putNextEntry(new ZipEntry(name));
+                zos.write(content(random, size));
+                zos.closeEntry();
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Returns entries of test runners of the jpa.test.framework, including the given number of numbered ones.
+     */
+    static List<String> runners(int numbered) {
+        List<String> runners = new ArrayList<>(List.of(RUNNERS_PACKAGE + "TestRunner.class",
+                RUNNERS_PACKAGE + "GenericTestRunner.class", RUNNERS_PACKAGE + "SingleUnitTestRunnerBean.class"));
+        for (int i = 1; i <= numbered; i++) {
+            runners.add(RUNNERS_PACKAGE + "TestRunner" + i + ".class");
+            runners.add(RUNNERS_PACKAGE + "TestRunner" + i + "Bean.class");
+        }
+        return runners;
+    }
+
+    /**
+     * Returns persistence.xml with the given number of persistence units with a few classes and properties each.
+     */
+    static String persistenceXml(int units) {
+        StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+                .append("<persistence xmlns=\"https://jakarta.ee/xml/ns/persistence\"\n")
+                .append("             xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"\n")
+                .append("             xsi:schemaLocation=\"https://jakarta.ee/xml/ns/persistence https://jakarta.ee/xml/ns/persistence/persistence_3_0.xsd\"\n")
+                .append("             version=\"3.0\">\n");
+        for (int i = 0; i < units; i++) {
+            sb.append("    <persistence-unit name=\"pu").append(i).append("\" transaction-type=\"RESOURCE_LOCAL\">\n");
+            for (int c = 0; c < 10; c++) {
+                sb.append("        <class>app.pu").append(i).append(".Entity").append(c).append("</class>\n");
+            }
+            sb.append("        <exclude-unlisted-classes>true</exclude-unlisted-classes>\n")
+                    .append("        <properties>\n")
+                    .append("            <property name=\"eclipselink.logging.level\" value=\"FINE\"/>\n")
+                    .append("            <property name=\"eclipselink.target-database\" value=\"Derby\"/>\n")
+                    .append("        </properties>\n")
+                    .append("    </persistence-unit>\n");
+        }
+        return sb.append("</persistence>\n").toString();
+    }
+
+    static void write(Path file, String content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+    }
+
+    static void delete(Path dir) throws IOException {
+        if (Files.exists(dir)) {
+            try (Stream<Path> s = Files.walk(dir)) {
+                for (Path p : (Iterable<Path>) s.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.delete(p);
+                }
+            }
+        }
+    }
+}
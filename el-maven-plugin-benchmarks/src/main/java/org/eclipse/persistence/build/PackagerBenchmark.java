@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2022 Oracle and/or its affiliates. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0,
+ * or the Eclipse Distribution License v. 1.0 which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR BSD-3-Clause
+ */
+
+package org.eclipse.persistence.build;
+
+import org.apache.maven.archiver.MavenArchiveConfiguration;
+import org.apache.maven.model.Build;
+import org.apache.maven.model.Model;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.DefaultPlexusContainer;
+import org.codehaus.plexus.PlexusContainer;
+import org.codehaus.plexus.archiver.Archiver;
+import org.codehaus.plexus.archiver.jar.JarArchiver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creation of an EJB jar from a framework jar, test jars and a directory of classes, by the plexus archiver
+ * ({@code threads} {@code 0}) and by {@link ArchiveWriter}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PackagerBenchmark {
+
+    @Param({"0", "1", "4"})
+    public int threads;
+
+    @Param({"5000"})
+    public int classes;
+
+    private Path dir;
+    private File fwk;
+    private final List<File> tests = new ArrayList<>();
+    private File classesDir;
+    private MavenProject project;
+    private PlexusContainer container;
+
+    @Setup
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("packager-benchmark");
+        fwk = Fixtures.jar(dir.resolve("fwk.jar"), "org/eclipse/persistence/testing/framework/", classes, 2048, Fixtures.runners(6)).toFile();
+        for (int i = 0; i < 3; i++) {
+            tests.add(Fixtures.jar(dir.resolve("test" + i + ".jar"), "org/eclipse/persistence/testing/tests/t" + i + "/", classes / 5, 4096, List.of()).toFile());
+        }
+        Random random = new Random(1);
+        classesDir = dir.resolve("classes").toFile();
+        for (int i = 0; i < 200; i++) {
+            Path c = classesDir.toPath().resolve("app/p" + i / 50 + "/C" + i + ".class");
+            Files.createDirectories(c.getParent());
+            Files.write(c, Fixtures.content(random, 2048));
+        }
+        Model model = new Model();
+        model.setGroupId("test");
+        model.setArtifactId("app");
+        model.setVersion("1.0");
+        model.setBuild(new Build());
+        model.getBuild().setDirectory(dir.resolve("target").toString());
+        project = new MavenProject(model);
+        container = new DefaultPlexusContainer();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        container.dispose();
+        Fixtures.delete(dir);
+    }
+
+    @Benchmark
+    public long createArchive() throws Exception {
+        Packager p = new Packager((JarArchiver) container.lookup(Archiver.class, "jar"), Fixtures.log());
+        File dest = dir.resolve("target/app_ejb.jar").toFile();
+        p.setTarget(dest);
+        p.setOutputTimestamp("2022-01-01T00:00:00Z");
+        p.setThreads(threads);
+        p.setStoredEntries(new String[] {"**/*.jar"});
+        p.setConfDir(dir.resolve("resources-ejb").toFile());
+        p.setMetrics(new PackagerMetrics("app"));
+        p.addExpanded(fwk, EntryMatcher.exclude("%regex[.*TestRunner[0-9].*]"));
+        for (File test : tests) {
+            p.addExpanded(test, EntryMatcher.exclude("**/META-INF/**"));
+        }
+        p.addClasses(classesDir);
+        MavenArchiveConfiguration archive = new MavenArchiveConfiguration();
+        archive.setAddMavenDescriptor(false);
+        p.createArchive(project, null, null, archive);
+        return dest.length();
+    }
+}
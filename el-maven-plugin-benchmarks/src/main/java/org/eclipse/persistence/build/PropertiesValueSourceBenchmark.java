@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2022 Oracle and/or its affiliates. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0,
+ * or the Eclipse Distribution License v. 1.0 which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR BSD-3-Clause
+ */
+
+package org.eclipse.persistence.build;
+
+import org.codehaus.plexus.interpolation.ValueSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups of filtered expressions, properties and their aliases, in project properties
+ * and in their snapshot.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PropertiesValueSourceBenchmark {
+
+    private static final String[] EXPRESSIONS = {
+            "data-source-name", "datasource-type", "database-platform", "server-platform-class",
+            "eclipselink.logging.level", "persistence-unit.name", "db.user", "project.version"
+    };
+
+    @Param({"false", "true"})
+    public boolean snapshot;
+
+    private ValueSource source;
+
+    @Setup
+    public void setUp() {
+        Properties properties = new Properties();
+        for (int i = 0; i < 200; i++) {
+            properties.setProperty("property" + i, "value" + i);
+        }
+        properties.setProperty("persistence-unit.name", "default");
+        properties.setProperty("persistence-unit.data-source-name", "jdbc/EclipseLinkDS");
+        properties.setProperty("persistence-unit.data-source-type", "jta-data-source");
+        properties.setProperty("db.platform", "org.eclipse.persistence.platform.database.OraclePlatform");
+        properties.setProperty("db.user", "scott");
+        properties.setProperty("server.platform", "weblogic");
+        properties.setProperty("eclipselink.logging.level", "FINE");
+        properties.setProperty("project.version", "1.0");
+        source = snapshot ? PropertiesValueSource.snapshot(properties) : new PropertiesValueSource(properties);
+    }
+
+    @Benchmark
+    public void lookups(Blackhole bh) {
+        for (String expression : EXPRESSIONS) {
+            bh.consume(source.getValue(expression));
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2022 Oracle and/or its affiliates. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0,
+ * or the Eclipse Distribution License v. 1.0 which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR BSD-3-Clause
+ */
+
+package org.eclipse.persistence.build;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookup of test runners of a framework jar of {@code classes} classes: {@code scan} reads its central directory
+ * as the jar changes before each lookup, {@code cached} is answered by the in-memory index.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RunnerIndexBenchmark {
+
+    @Param({"1000", "20000"})
+    public int classes;
+
+    private Path dir;
+    private File fwk;
+    private RunnerIndex index;
+    private final EntryMatcher filter = EntryMatcher.exclude("%regex[.*TestRunner[0-9].*]");
+    private long modified;
+
+    @Setup
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("runners-benchmark");
+        fwk = Fixtures.jar(dir.resolve("fwk.jar"), "org/eclipse/persistence/testing/framework/", classes, 64, Fixtures.runners(6)).toFile();
+        index = new RunnerIndex(dir.resolve("cache"), Fixtures.log());
+        modified = Files.getLastModifiedTime(fwk.toPath()).toMillis();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        Fixtures.delete(dir);
+    }
+
+    @State(Scope.Thread)
+    public static class Changed {
+
+        @Setup(Level.Invocation)
+        public void touch(RunnerIndexBenchmark b) throws Exception {
+            // the index is keyed by the modification time of the jar
+            b.modified += 1000;
+            Files.setLastModifiedTime(b.fwk.toPath(), FileTime.fromMillis(b.modified));
+        }
+    }
+
+    @Benchmark
+    public String scan(Changed changed) throws Exception {
+        return index.getRunners(fwk, filter);
+    }
+
+    @Benchmark
+    public String cached() throws Exception {
+        return index.getRunners(fwk, filter);
+    }
+
+    @Benchmark
+    public List<String> entryNames() throws Exception {
+        return RunnerIndex.entryNames(fwk.toPath());
+    }
+}
@@ -0,0 +1,18 @@
+/*
+ * Copyright (c) 2022 Oracle and/or its affiliates. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0,
+ * or the Eclipse Distribution License v. 1.0 which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR BSD-3-Clause
+ */
+
+import groovy.xml.XmlSlurper
+
+// generates modules listed by the reactor and installs their dependencies in the local repository
+def modules = new XmlSlurper().parse(new File(basedir, 'pom.xml')).modules.module*.text()
+org.eclipse.persistence.build.ReactorFixture.main(([basedir.path, localRepositoryPath.path] + modules) as String[])
+return true
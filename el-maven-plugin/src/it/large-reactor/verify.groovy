@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2022 Oracle and/or its affiliates. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0,
+ * or the Eclipse Distribution License v. 1.0 which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR BSD-3-Clause
+ */
+
+import groovy.json.JsonSlurper
+import groovy.xml.XmlSlurper
+
+def reactor = new XmlSlurper().parse(new File(basedir, 'pom.xml'))
+long budgetMillis = reactor.properties.'el.packager.budget.millis'.text() as long
+def log = new File(basedir, 'build.log').text
+
+for (String module : reactor.modules.module*.text()) {
+    def target = new File(basedir, module + '/target')
+    // both modes packaged the module within the time budget, the build fails otherwise
+    assert log.count("Packaged ${module}-1.0 in ") == 2 : "${module} not packaged in EJB and EAR modes"
+    assert new File(target, "${module}-1.0.ear").isFile()
+    assert new File(target, "${module}-1.0_ejb.jar").isFile()
+    def metrics = new JsonSlurper().parse(new File(target, "eclipselink-packager/${module}-1.0.metrics.json"))
+    assert !metrics.upToDate
+    assert metrics.millis <= budgetMillis : "${module} packaged in ${metrics.millis}ms"
+    // heap use is only reported, garbage of earlier modules makes it uncertain
+    assert metrics.peakHeap > 0 && metrics.heapGrowth >= 0
+}
+assert new File(basedir, 'target/eclipselink-packager-report.json').isFile()
+return true
@@ -0,0 +1,892 @@
+/*
+ * Copyright (c) 2022 Oracle and/or its affiliates. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0,
+ * or the Eclipse Distribution License v. 1.0 which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR BSD-3-Clause
+ */
+
+package org.eclipse.persistence.build;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.AbstractScanner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes jar archives compressing entries concurrently.
+ * <p>
+ * Entries are deflated by a pool of worker threads (scatter) and written to the target
+ * in the order of their names as they complete (gather), so the content of the archive
+ * does not depend on the number of threads or on scheduling. Entries of expanded archives
+ * already stored or deflated as they are to be written are not recompressed, their compressed data
+ * and CRC are copied as they are. Nested archives added by {@link #addNested} are streamed into their entry
+ * as they are written. When an entry is added more than once, the first one wins,
+ * which is what the plexus archiver does by default.
+ */
+final class ArchiveWriter implements Closeable {
+
+    static final String MANIFEST = "META-INF/MANIFEST.MF";
+
+    // META-INF/ and the manifest go first, as JarInputStream expects them there
+    private static final Comparator<String> ORDER = Comparator.comparing((String s) -> !"META-INF/".equals(s))
+            .thenComparing(s -> !MANIFEST.equals(s))
+            .thenComparing(Comparator.naturalOrder());
+
+    // entries of directories the plexus archiver skips by default
+    static final EntryMatcher DEFAULT_FILTER = EntryMatcher.exclude(AbstractScanner.DEFAULTEXCLUDES);
+
+    private static final int FILE_MODE = 0100644;
+    private static final int DIR_MODE = 040755;
+
+    private final int threads;
+    private final Log log;
+    private final Map<String, Content> entries;
+    private final List<ZipFile> archives;
+    private final AtomicLong inputBytes;
+    private final AtomicLong storedBytes;
+    private int storedEntries;
+    private int writtenEntries;
+    private long writtenBytes = -1;
+    private int linkedEntries;
+    private int unchangedEntries;
+    private int removedEntries;
+    private int duplicateEntries;
+    private final List<String> conflicts = new ArrayList<>();
+    private int level;
+    private EntryMatcher stored;
+    private Date timestamp;
+    private Path linkRoot;
+
+    ArchiveWriter(int threads, Log log) {
+        this.threads = Math.max(1, threads);
+        this.log = log;
+        entries = new LinkedHashMap<>();
+        archives = new ArrayList<>();
+        inputBytes = new AtomicLong();
+        storedBytes = new AtomicLong();
+        level = Deflater.DEFAULT_COMPRESSION;
+    }
+
+    /**
+     * Sets the deflate level of compressed entries, {@code 0} stores all entries.
+     */
+    void setLevel(int level) {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("invalid compression level: " + level);
+        }
+        this.level = level;
+    }
+
+    /**
+     * Sets patterns of entries to be stored without compression.
+     */
+    void setStored(String[] stored) {
+        this.stored = stored == null || stored.length == 0 ? null : EntryMatcher.of(stored, null);
+    }
+
+    /**
+     * Sets the timestamp of all entries, if not set, entries keep the last modification time of their source.
+     */
+    void setTimestamp(Date timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Sets the directory files of which may be hard-linked by {@link #writeDirectory(Path, Collection)},
+     * other files are copied. Files of the local repository or of shared caches must never be linked,
+     * a write to the linked file would change them for every build.
+     */
+    void setLinkRoot(Path linkRoot) {
+        this.linkRoot = linkRoot == null ? null : linkRoot.toAbsolutePath().normalize();
+    }
+
+    void addFile(File file, String name) throws IOException {
+        put(name, new FileContent(file.toPath(), file.getName()));
+    }
+
+    void addContent(String name, byte[] content) throws IOException {
+        put(name, new BytesContent(content, name));
+    }
+
+    void addDirectory(File root, EntryMatcher filter) throws IOException {
+        Path base = root.toPath();
+        List<Path> files;
+        try (Stream<Path> s = Files.walk(base)) {
+            files = s.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+        for (Path f : files) {
+            String name = base.relativize(f).toString().replace(File.separatorChar, '/');
+            if (DEFAULT_FILTER.matches(name) && filter.matches(name)) {
+                put(name, new FileContent(f, root.getName() + '/'));
+            }
+        }
+    }
+
+    /**
+     * Adds files of the directory replacing entries of the same name added before.
+     */
+    void replaceDirectory(File root) throws IOException {
+        Path base = root.toPath();
+        List<Path> files;
+        try (Stream<Path> s = Files.walk(base)) {
+            files = s.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+        for (Path f : files) {
+            String name = base.relativize(f).toString().replace(File.separatorChar, '/');
+            if (DEFAULT_FILTER.matches(name)) {
+                entries.put(name, new FileContent(f, root.getName() + '/'));
+            }
+        }
+    }
+
+    void addArchive(File archive, EntryMatcher filter) throws IOException {
+        ZipFile zf = new ZipFile(archive);
+        archives.add(zf);
+        for (Enumeration<ZipArchiveEntry> en = zf.getEntriesInPhysicalOrder(); en.hasMoreElements(); ) {
+            ZipArchiveEntry e = en.nextElement();
+            if (!e.isDirectory() && filter.matches(e.getName())) {
+                put(e.getName(), new ArchivedContent(zf, e, archive.getName()));
+            }
+        }
+    }
+
+    /**
+     * Adds an archive written into its entry while this archive is written, so that it is never held in memory.
+     * It is stored when this archive is written to a file, deflated otherwise.
+     *
+     * @param target file the nested archive is written to as well, or {@code null}
+     */
+    void addNested(String name, ArchiveWriter archive, File target) throws IOException {
+        put(name, new NestedContent(archive, target, name));
+    }
+
+    /**
+     * Adds the content replacing an entry of the same name added before.
+     */
+    void replaceContent(String name, byte[] content) {
+        entries.put(name, new BytesContent(content, name));
+    }
+
+    /**
+     * @return names of added entries, in the order they were added
+     */
+    Set<String> getNames() {
+        return Collections.unmodifiableSet(entries.keySet());
+    }
+
+    InputStream open(String name) throws IOException {
+        return entries.get(name).open();
+    }
+
+    /**
+     * Closes archives added by {@link #addArchive(File, EntryMatcher)}, call when entries are not written.
+     */
+    @Override
+    public void close() throws IOException {
+        for (ZipFile zf : archives) {
+            zf.close();
+        }
+        archives.clear();
+        for (Content content : entries.values()) {
+            if (content instanceof NestedContent) {
+                ((NestedContent) content).archive.close();
+            }
+        }
+    }
+
+    // duplicates are resolved before any content is read, the manifest of expanded archives is always replaced
+    private void put(String name, Content content) throws IOException {
+        Content first = entries.putIfAbsent(name, content);
+        if (first != null && !MANIFEST.equals(name)) {
+            duplicateEntries++;
+            if (!first.hasSameContent(content)) {
+                conflicts.add(String.format("%s (%s, ignored: %s)", name, first, content));
+            }
+        }
+    }
+
+    /**
+     * Writes all added entries to the given file.
+     *
+     * @return number of written entries
+     */
+    int write(File dest) throws IOException {
+        Files.createDirectories(dest.getAbsoluteFile().getParentFile().toPath());
+        int count;
+        try (ZipArchiveOutputStream out = new ZipArchiveOutputStream(dest)) {
+            count = write(out, dest.getName());
+        }
+        writtenBytes = dest.length();
+        return count;
+    }
+
+    /**
+     * Writes all added entries to the given stream, which is left open.
+     *
+     * @return number of written entries
+     */
+    int write(OutputStream os, String name) throws IOException {
+        CopyingOutputStream counting = new CopyingOutputStream(os, null);
+        ZipArchiveOutputStream out = new ZipArchiveOutputStream(counting);
+        int count = write(out, name);
+        out.finish();
+        writtenBytes = counting.count;
+        return count;
+    }
+
+    private int write(ZipArchiveOutputStream out, String archiveName) throws IOException {
+        inputBytes.set(0);
+        storedBytes.set(0);
+        storedEntries = 0;
+        // nested archives are deflated by the stream itself
+        out.setLevel(level);
+        Map<String, Content> sorted = new TreeMap<>(ORDER);
+        for (Map.Entry<String, Content> e : entries.entrySet()) {
+            sorted.put(e.getKey(), e.getValue());
+            String name = e.getKey();
+            for (int i = name.lastIndexOf('/'); i > 0; i = name.lastIndexOf('/', i - 1)) {
+                sorted.putIfAbsent(name.substring(0, i + 1), null);
+            }
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "el-packager-deflater");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            // bounds the number of compressed entries held in memory
+            int window = threads * 4;
+            int copied = 0;
+            Deque<Future<Prepared>> pending = new ArrayDeque<>(window);
+            PackagingEvents.EntryBatch batch = PackagingEvents.EntryBatch.start(archiveName);
+            for (Map.Entry<String, Content> e : sorted.entrySet()) {
+                Content content = e.getValue();
+                ZipArchiveEntry ze = new ZipArchiveEntry(e.getKey());
+                ze.setTime(getTime(content));
+                if (content == null) {
+                    ze.setUnixMode(DIR_MODE);
+                    ze.setMethod(ZipArchiveEntry.STORED);
+                    ze.setSize(0);
+                    ze.setCrc(0);
+                    pending.add(CompletableFuture.completedFuture(new Prepared(ze, null, null, null)));
+                } else {
+                    ze.setUnixMode(FILE_MODE);
+                    boolean store = level == Deflater.NO_COMPRESSION || (stored != null && stored.matches(e.getKey()));
+                    if (store) {
+                        storedEntries++;
+                    }
+                    int method = store ? ZipArchiveEntry.STORED : ZipArchiveEntry.DEFLATED;
+                    if (content instanceof NestedContent) {
+                        // stored entries of unknown size and CRC need a file to update their header afterwards
+                        ze.setMethod(store && out.isSeekable() ? ZipArchiveEntry.STORED : ZipArchiveEntry.DEFLATED);
+                        pending.add(CompletableFuture.completedFuture(new Prepared(ze, null, null, (NestedContent) content)));
+                    } else if (content instanceof ArchivedContent && ((ArchivedContent) content).canCopyRaw(method)) {
+                        ArchivedContent archived = (ArchivedContent) content;
+                        ze.setMethod(method);
+                        ze.setCrc(archived.entry.getCrc());
+                        ze.setSize(archived.entry.getSize());
+                        ze.setCompressedSize(archived.entry.getCompressedSize());
+                        pending.add(CompletableFuture.completedFuture(new Prepared(ze, null, archived, null)));
+                        inputBytes.addAndGet(archived.entry.getSize());
+                        if (store) {
+                            storedBytes.addAndGet(archived.entry.getSize());
+                        }
+                        copied++;
+                    } else {
+                        pending.add(CompletableFuture.supplyAsync(() -> compress(ze, content, store), executor));
+                    }
+                }
+                if (pending.size() >= window) {
+                    batch = batch.add(writeNext(out, pending), window);
+                }
+            }
+            while (!pending.isEmpty()) {
+                batch = batch.add(writeNext(out, pending), window);
+            }
+            batch.complete();
+            log.debug(String.format("copied %d compressed entries to %s as they are", copied, archiveName));
+        } finally {
+            executor.shutdownNow();
+            close();
+        }
+        log.debug(String.format("written %d entries to %s using %d thread(s)", sorted.size(), archiveName, threads));
+        writtenEntries = sorted.size();
+        return writtenEntries;
+    }
+
+    /**
+     * Writes all added entries as files under the given directory, keeping it in sync with entries:
+     * files added from under the {@link #setLinkRoot(Path) link root} are hard-linked where possible,
+     * files which did not change are left as they are and files which are not entries are removed.
+     *
+     * @param retained names of top level entries of the directory which are left as they are
+     * @return number of entries
+     */
+    int writeDirectory(Path dir, Collection<String> retained) throws IOException {
+        linkedEntries = 0;
+        unchangedEntries = 0;
+        removedEntries = 0;
+        Path root = dir.toAbsolutePath().normalize();
+        Set<Path> expected = new HashSet<>();
+        try {
+            for (Map.Entry<String, Content> e : new TreeMap<>(entries).entrySet()) {
+                Path target = root.resolve(e.getKey()).normalize();
+                if (!target.startsWith(root) || target.equals(root)) {
+                    throw new IOException("entry outside of " + dir + ": " + e.getKey());
+                }
+                expected.add(target);
+                Files.createDirectories(target.getParent());
+                Content content = e.getValue();
+                boolean linkable = content instanceof FileContent && isLinkable(((FileContent) content).file);
+                // links to files which may not be linked, left by earlier builds, are replaced by copies
+                if (content.isUpToDate(target) && (linkable || !(content instanceof FileContent && ((FileContent) content).isSameFile(target)))) {
+                    unchangedEntries++;
+                    continue;
+                }
+                Files.deleteIfExists(target);
+                if (linkable && link(target, ((FileContent) content).file)) {
+                    linkedEntries++;
+                    continue;
+                }
+                try (InputStream is = content.open()) {
+                    Files.copy(is, target);
+                }
+                Files.setLastModifiedTime(target, FileTime.fromMillis(content.lastModified()));
+            }
+        } finally {
+            close();
+        }
+        List<Path> existing;
+        try (Stream<Path> s = Files.walk(root)) {
+            existing = s.filter(p -> !p.equals(root) && !retained.contains(root.relativize(p).getName(0).toString()))
+                    .sorted(Comparator.reverseOrder())
+                    .collect(Collectors.toList());
+        }
+        for (Path p : existing) {
+            if (Files.isDirectory(p)) {
+                try (Stream<Path> s = Files.list(p)) {
+                    if (s.findAny().isEmpty()) {
+                        Files.delete(p);
+                    }
+                }
+            } else if (!expected.contains(p)) {
+                Files.delete(p);
+                removedEntries++;
+            }
+        }
+        log.debug(String.format("written %d entries to %s, %d linked, %d unchanged, %d removed",
+                entries.size(), dir, linkedEntries, unchangedEntries, removedEntries));
+        return entries.size();
+    }
+
+    /**
+     * @return number of entries hard-linked by the last {@link #writeDirectory(Path, Collection)}
+     */
+    int getLinkedEntries() {
+        return linkedEntries;
+    }
+
+    /**
+     * @return number of entries left as they are by the last {@link #writeDirectory(Path, Collection)}
+     */
+    int getUnchangedEntries() {
+        return unchangedEntries;
+    }
+
+    /**
+     * @return number of files removed by the last {@link #writeDirectory(Path, Collection)}
+     */
+    int getRemovedEntries() {
+        return removedEntries;
+    }
+
+    /**
+     * @return number of entries added more than once, only the first one is written
+     */
+    int getDuplicateEntries() {
+        return duplicateEntries;
+    }
+
+    /**
+     * @return descriptions of entries added more than once with different content
+     */
+    List<String> getConflicts() {
+        return Collections.unmodifiableList(conflicts);
+    }
+
+    /**
+     * @return uncompressed size of entries written by the last {@link #write(File)}
+     */
+    long getInputBytes() {
+        return inputBytes.get();
+    }
+
+    /**
+     * @return size of the archive written by the last {@link #write(File)}, {@code -1} if not written yet
+     */
+    long getWrittenBytes() {
+        return writtenBytes;
+    }
+
+    /**
+     * @return number of entries, including directories, written by the last {@link #write(File)}
+     */
+    int getWrittenEntries() {
+        return writtenEntries;
+    }
+
+    /**
+     * @return uncompressed size of all added entries
+     */
+    long getContentBytes() throws IOException {
+        long result = 0;
+        for (Content content : entries.values()) {
+            result += Math.max(0, content.size());
+        }
+        return result;
+    }
+
+    /**
+     * @return uncompressed size of added entries keyed by files, directories and archives they come from
+     */
+    Map<String, Long> getSourceBytes() throws IOException {
+        Map<String, Long> result = new HashMap<>();
+        for (Content content : entries.values()) {
+            result.merge(content.source(), Math.max(0, content.size()), Long::sum);
+        }
+        return result;
+    }
+
+    /**
+     * @return number of entries stored without compression by the last {@link #write(File)}
+     */
+    int getStoredEntries() {
+        return storedEntries;
+    }
+
+    /**
+     * @return size of entries stored without compression by the last {@link #write(File)}
+     */
+    long getStoredBytes() {
+        return storedBytes.get();
+    }
+
+    // returns the compressed size of the written entry
+    private long writeNext(ZipArchiveOutputStream out, Deque<Future<Prepared>> pending) throws IOException {
+        try {
+            Prepared d = pending.removeFirst().get();
+            if (d.nested != null) {
+                out.putArchiveEntry(d.entry);
+                d.nested.write(out);
+                out.closeArchiveEntry();
+                inputBytes.addAndGet(d.entry.getSize());
+                if (d.entry.getMethod() == ZipArchiveEntry.STORED) {
+                    storedBytes.addAndGet(d.entry.getSize());
+                }
+            } else if (d.raw != null) {
+                try (InputStream is = d.raw.openRaw()) {
+                    out.addRawArchiveEntry(d.entry, is);
+                }
+            } else if (d.data == null) {
+                out.putArchiveEntry(d.entry);
+                out.closeArchiveEntry();
+            } else {
+                out.addRawArchiveEntry(d.entry, new ByteArrayInputStream(d.data));
+            }
+            return Math.max(0, d.entry.getCompressedSize());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private boolean isLinkable(Path file) {
+        return linkRoot != null && file.toAbsolutePath().normalize().startsWith(linkRoot);
+    }
+
+    private boolean link(Path target, Path source) {
+        try {
+            Files.createLink(target, source);
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            // ie different file stores
+            log.debug("cannot link " + source + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private long getTime(Content content) {
+        if (timestamp != null) {
+            // zip stores local time, shift it so the entry shows the timestamp as is in any timezone
+            long t = timestamp.getTime();
+            return t - TimeZone.getDefault().getOffset(t);
+        }
+        return content == null ? System.currentTimeMillis() : content.lastModified();
+    }
+
+    private Prepared compress(ZipArchiveEntry ze, Content content, boolean store) {
+        try {
+            byte[] bytes;
+            try (InputStream is = content.open()) {
+                bytes = is.readAllBytes();
+            }
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            inputBytes.addAndGet(bytes.length);
+            ze.setSize(bytes.length);
+            ze.setCrc(crc.getValue());
+            if (store) {
+                ze.setMethod(ZipArchiveEntry.STORED);
+                ze.setCompressedSize(bytes.length);
+                storedBytes.addAndGet(bytes.length);
+                return new Prepared(ze, bytes, null, null);
+            }
+            Deflater deflater = new Deflater(level, true);
+            ByteArrayOutputStream baos = new ByteArrayOutputStream(bytes.length / 2 + 64);
+            try {
+                deflater.setInput(bytes);
+                deflater.finish();
+                byte[] buf = new byte[8192];
+                while (!deflater.finished()) {
+                    baos.write(buf, 0, deflater.deflate(buf));
+                }
+            } finally {
+                deflater.end();
+            }
+            ze.setMethod(ZipArchiveEntry.DEFLATED);
+            ze.setCompressedSize(baos.size());
+            return new Prepared(ze, baos.toByteArray(), null, null);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // entry ready to be written, either with compressed data, with the source to copy as is,
+    // with the nested archive to write into it, or a directory
+    private static final class Prepared {
+        private final ZipArchiveEntry entry;
+        private final byte[] data;
+        private final ArchivedContent raw;
+        private final NestedContent nested;
+
+        Prepared(ZipArchiveEntry entry, byte[] data, ArchivedContent raw, NestedContent nested) {
+            this.entry = entry;
+            this.data = data;
+            this.raw = raw;
+            this.nested = nested;
+        }
+    }
+
+    private abstract static class Content {
+        abstract InputStream open() throws IOException;
+        abstract long lastModified();
+
+        // whether the given file has the same content, decided by its size and last modification time
+        boolean isUpToDate(Path file) throws IOException {
+            return Files.isRegularFile(file) && Files.size(file) == size()
+                    && Files.getLastModifiedTime(file).toMillis() == lastModified();
+        }
+
+        abstract long size() throws IOException;
+
+        // the file, directory or archive the content comes from
+        String source() {
+            return toString();
+        }
+
+        long crc() throws IOException {
+            CRC32 crc = new CRC32();
+            try (InputStream is = open()) {
+                byte[] buf = new byte[8192];
+                for (int n; (n = is.read(buf)) > 0; ) {
+                    crc.update(buf, 0, n);
+                }
+            }
+            return crc.getValue();
+        }
+
+        // the CRC is known for archived entries, content of the disk is read only when sizes match
+        boolean hasSameContent(Content other) throws IOException {
+            return size() == other.size() && crc() == other.crc();
+        }
+    }
+
+    private static final class FileContent extends Content {
+        private final Path file;
+        private final String source;
+
+        FileContent(Path file, String source) {
+            this.file = file;
+            this.source = source;
+        }
+
+        @Override
+        InputStream open() throws IOException {
+            return Files.newInputStream(file);
+        }
+
+        @Override
+        long lastModified() {
+            return file.toFile().lastModified();
+        }
+
+        @Override
+        boolean isUpToDate(Path target) throws IOException {
+            return isSameFile(target) || super.isUpToDate(target);
+        }
+
+        boolean isSameFile(Path target) throws IOException {
+            return Files.exists(target) && Files.isSameFile(target, file);
+        }
+
+        @Override
+        long size() throws IOException {
+            return Files.size(file);
+        }
+
+        @Override
+        String source() {
+            return source;
+        }
+
+        @Override
+        public String toString() {
+            return file.toString();
+        }
+    }
+
+    private static final class BytesContent extends Content {
+        private final byte[] content;
+        private final String source;
+
+        BytesContent(byte[] content, String source) {
+            this.content = content;
+            this.source = source;
+        }
+
+        @Override
+        InputStream open() {
+            return new ByteArrayInputStream(content);
+        }
+
+        @Override
+        long lastModified() {
+            return System.currentTimeMillis();
+        }
+
+        @Override
+        boolean isUpToDate(Path target) throws IOException {
+            return Files.isRegularFile(target) && Files.size(target) == content.length
+                    && Arrays.equals(Files.readAllBytes(target), content);
+        }
+
+        @Override
+        long size() {
+            return content.length;
+        }
+
+        @Override
+        String source() {
+            return source;
+        }
+
+        @Override
+        public String toString() {
+            return "generated";
+        }
+    }
+
+    private static final class ArchivedContent extends Content {
+        private final ZipFile archive;
+        private final ZipArchiveEntry entry;
+        private final String archiveName;
+
+        ArchivedContent(ZipFile archive, ZipArchiveEntry entry, String archiveName) {
+            this.archive = archive;
+            this.entry = entry;
+            this.archiveName = archiveName;
+        }
+
+        @Override
+        InputStream open() throws IOException {
+            return archive.getInputStream(entry);
+        }
+
+        InputStream openRaw() {
+            return archive.getRawInputStream(entry);
+        }
+
+        // compressed data of entries with known sizes written by the same method is copied without inflating it,
+        // deflated entries keep the level they were compressed with
+        boolean canCopyRaw(int method) {
+            return entry.getMethod() == method
+                    && entry.getSize() >= 0 && entry.getCompressedSize() >= 0 && entry.getCrc() >= 0
+                    && !entry.getGeneralPurposeBit().usesEncryption();
+        }
+
+        @Override
+        long lastModified() {
+            return entry.getTime();
+        }
+
+        @Override
+        long size() {
+            return entry.getSize();
+        }
+
+        @Override
+        long crc() throws IOException {
+            return entry.getCrc() >= 0 ? entry.getCrc() : super.crc();
+        }
+
+        @Override
+        public String toString() {
+            return archiveName;
+        }
+    }
+
+    // archive written when the entry is written, its size is not known before
+    private static final class NestedContent extends Content {
+        private final ArchiveWriter archive;
+        private final File target;
+        private final String name;
+
+        NestedContent(ArchiveWriter archive, File target, String name) {
+            this.archive = archive;
+            this.target = target;
+            this.name = name;
+        }
+
+        void write(OutputStream entry) throws IOException {
+            if (target == null) {
+                archive.write(entry, name);
+                return;
+            }
+            Files.createDirectories(target.getAbsoluteFile().getParentFile().toPath());
+            try (OutputStream copy = Files.newOutputStream(target.toPath())) {
+                archive.write(new CopyingOutputStream(entry, copy), name);
+            }
+        }
+
+        @Override
+        InputStream open() throws IOException {
+            throw new IOException("nested archive is only written into its entry: " + name);
+        }
+
+        @Override
+        long lastModified() {
+            return System.currentTimeMillis();
+        }
+
+        @Override
+        boolean isUpToDate(Path file) {
+            return false;
+        }
+
+        @Override
+        long size() {
+            return archive.getWrittenBytes();
+        }
+
+        // written only once, it is never the same as another content
+        @Override
+        boolean hasSameContent(Content other) {
+            return this == other;
+        }
+
+        @Override
+        String source() {
+            return name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    // counts written bytes, writes them to the copy too when set; neither stream is closed
+    private static final class CopyingOutputStream extends OutputStream {
+        private final OutputStream out;
+        private final OutputStream copy;
+        private long count;
+
+        CopyingOutputStream(OutputStream out, OutputStream copy) {
+            this.out = out;
+            this.copy = copy;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            if (copy != null) {
+                copy.write(b, off, len);
+            }
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+            if (copy != null) {
+                copy.flush();
+            }
+        }
+    }
+}
@@ -14,12 +14,20 @@ package org.eclipse.persistence.build;
 
 import org.eclipse.aether.RepositorySystem;
 import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.SessionData;
 import org.eclipse.aether.artifact.Artifact;
 import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.repository.WorkspaceRepository;
 import org.eclipse.aether.resolution.ArtifactRequest;
 import org.eclipse.aether.resolution.ArtifactResolutionException;
+import org.eclipse.aether.resolution.ArtifactResult;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  *
@@ -27,13 +35,96 @@ import java.util.List;
  */
 final class DependencyResolver {
 
+    private static final String CACHE_KEY = DependencyResolver.class.getName() + ".artifacts";
+
     public static Artifact resolveArtifact(org.apache.maven.model.Dependency d, List<RemoteRepository> remoteRepos,
                                                 RepositorySystem repoSystem, RepositorySystemSession repoSession)
             throws ArtifactResolutionException {
-        org.eclipse.aether.artifact.DefaultArtifact artifact = new org.eclipse.aether.artifact.DefaultArtifact(d.getGroupId(),d.getArtifactId(), d.getClassifier(), "jar", d.getVersion());
-        ArtifactRequest request = new ArtifactRequest();
-        request.setArtifact(artifact);
-        request.setRepositories(remoteRepos);
-        return repoSystem.resolveArtifact(repoSession, request).getArtifact();
+        return resolveArtifacts(List.of(d), remoteRepos, repoSystem, repoSession).get(getCoordinates(d));
+    }
+
+    /**
+     * Resolves given dependencies in a single request to the repository system, which downloads
+     * missing artifacts concurrently. Duplicate dependencies are resolved once. Artifacts resolved
+     * from a repository are remembered for the rest of the session, artifacts from the reactor
+     * are always resolved again as they may not be packaged yet.
+     *
+     * @return resolved artifacts keyed by {@link #getCoordinates(org.apache.maven.model.Dependency)}
+     */
+    public static Map<String, Artifact> resolveArtifacts(Collection<org.apache.maven.model.Dependency> deps, List<RemoteRepository> remoteRepos,
+                                                         RepositorySystem repoSystem, RepositorySystemSession repoSession)
+            throws ArtifactResolutionException {
+        Map<String, Artifact> cache = getCache(repoSession);
+        Map<String, Artifact> resolved = new HashMap<>();
+        Map<String, ArtifactRequest> requests = new LinkedHashMap<>();
+        for (org.apache.maven.model.Dependency d : deps) {
+            Artifact artifact = toArtifact(d);
+            String key = artifact.toString();
+            Artifact cached = cache.get(key);
+            if (cached != null) {
+                resolved.put(key, cached);
+                PackagingEvents.ArtifactResolution event = new PackagingEvents.ArtifactResolution();
+                if (event.isEnabled()) {
+                    event.artifact = key;
+                    event.bytes = length(cached);
+                    event.cached = true;
+                    event.commit();
+                }
+            } else if (!requests.containsKey(key)) {
+                ArtifactRequest request = new ArtifactRequest();
+                request.setArtifact(artifact);
+                request.setRepositories(remoteRepos);
+                requests.put(key, request);
+            }
+        }
+        if (!requests.isEmpty()) {
+            // artifacts are resolved concurrently, only the batch is timed
+            PackagingEvents.ArtifactBatch batch = new PackagingEvents.ArtifactBatch();
+            batch.begin();
+            List<ArtifactResult> results = repoSystem.resolveArtifacts(repoSession, requests.values());
+            batch.end();
+            for (ArtifactResult result : results) {
+                String key = result.getRequest().getArtifact().toString();
+                resolved.put(key, result.getArtifact());
+                if (!(result.getRepository() instanceof WorkspaceRepository)) {
+                    cache.put(key, result.getArtifact());
+                }
+                batch.bytes += length(result.getArtifact());
+                PackagingEvents.ArtifactResolution event = new PackagingEvents.ArtifactResolution();
+                if (event.isEnabled()) {
+                    event.artifact = key;
+                    event.bytes = length(result.getArtifact());
+                    event.commit();
+                }
+            }
+            if (batch.shouldCommit()) {
+                batch.artifacts = results.size();
+                batch.commit();
+            }
+        }
+        return resolved;
+    }
+
+    private static long length(Artifact artifact) {
+        return artifact.getFile() != null ? artifact.getFile().length() : 0;
+    }
+
+    public static String getCoordinates(org.apache.maven.model.Dependency d) {
+        return toArtifact(d).toString();
+    }
+
+    private static Artifact toArtifact(org.apache.maven.model.Dependency d) {
+        return new org.eclipse.aether.artifact.DefaultArtifact(d.getGroupId(), d.getArtifactId(), d.getClassifier(), "jar", d.getVersion());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Artifact> getCache(RepositorySystemSession repoSession) {
+        SessionData data = repoSession.getData();
+        Map<String, Artifact> cache = (Map<String, Artifact>) data.get(CACHE_KEY);
+        while (cache == null) {
+            data.set(CACHE_KEY, null, new ConcurrentHashMap<String, Artifact>());
+            cache = (Map<String, Artifact>) data.get(CACHE_KEY);
+        }
+        return cache;
     }
-}
\ No newline at end of file
+}
@@ -15,6 +15,7 @@ package org.eclipse.persistence.build;
 import org.apache.maven.plugin.logging.Log;
 
 import javax.xml.XMLConstants;
+import javax.xml.stream.XMLStreamException;
 import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerConfigurationException;
@@ -22,19 +23,28 @@ import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.Reader;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.io.Writer;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 final class DescriptorGenerator {
 
-    private static Templates puTemplate;
-    private static Templates ejbTemplate;
-    private boolean generateEJB, generatePU;
+    // compiled stylesheets shared by all modules built in this JVM
+    private static volatile Stylesheets stylesheets;
+
+    private boolean generateEJB, generatePU, streaming;
     private final Log log;
     private final Path sourcePu;
 
@@ -52,62 +62,185 @@ final class DescriptorGenerator {
         this.generatePU = generatePU;
     }
 
-    void generate(Path destDir, Map<String, Object> options) throws IOException, TransformerException {
+    /**
+     * Use {@link StreamingDescriptorGenerator} instead of XSL transformations.
+     */
+    void streaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    /**
+     * Generates descriptors under the given directory unless they are up-to-date.
+     *
+     * @return number of generated descriptors
+     */
+    int generate(Path destDir, Map<String, Object> options) throws IOException, TransformerException {
         if (!generatePU && !generateEJB) {
             log.info("Not generating server-side descriptors...");
-            return;
+            return 0;
         }
+        final Map<String, Object> opts = Objects.requireNonNull(options);
+        final Stylesheets xsl = getStylesheets();
+        final byte[] source = Files.readAllBytes(sourcePu);
+        final Path puDest = destDir.resolve(PackagerMojo.PERSISTENCE_DESC);
+        final Path ejbDest = destDir.resolve(PackagerMojo.EJB_DESC);
+
+        Fingerprint fingerprint = new Fingerprint(destDir.resolveSibling(destDir.getFileName() + ".fingerprint"))
+                .addContent("source", source)
+                .add("pu.xsl", xsl.puChecksum)
+                .add("ejb.xsl", xsl.ejbChecksum)
+                .add("generatePU", generatePU)
+                .add("generateEJB", generateEJB)
+                .add("streaming", streaming);
+        new TreeMap<>(opts).forEach(fingerprint::add);
+        List<File> outputs = new ArrayList<>();
         if (generatePU) {
-            Path dest = destDir.resolve(PackagerMojo.PERSISTENCE_DESC);
-            log.info(String.format("Generating %s to: %s", PackagerMojo.PERSISTENCE_DESC.getFileName(), dest));
-            createDescriptor(dest, options, getPersistenceTransformer());
-        } else {
-            log.info(String.format("Not generating %s...", PackagerMojo.PERSISTENCE_DESC.getFileName()));
+            outputs.add(puDest.toFile());
         }
         if (generateEJB) {
-            Path dest = destDir.resolve(PackagerMojo.EJB_DESC);
-            log.info(String.format("Generating %s to: %s", PackagerMojo.EJB_DESC.getFileName(), dest));
-            createDescriptor(dest, options, getEJBTransformer());
+            outputs.add(ejbDest.toFile());
+        }
+        if (fingerprint.isUpToDate(outputs)) {
+            log.info("Server-side descriptors are up-to-date, skipping generation...");
+            return 0;
+        }
+        fingerprint.invalidate();
+
+        // each transformation parses the source itself, DOM trees are not thread-safe even for reads
+        // and do not keep the order of attributes
+        CompletableFuture<Void> pu = CompletableFuture.completedFuture(null);
+        if (generatePU) {
+            log.info(String.format("Generating %s to: %s", PackagerMojo.PERSISTENCE_DESC.getFileName(), puDest));
+            // threads of the common pool do not have the plugin realm as their context class loader,
+            // which TransformerFactory and XMLOutputFactory look implementations up with
+            final ClassLoader realm = Thread.currentThread().getContextClassLoader();
+            pu = CompletableFuture.runAsync(() -> {
+                Thread current = Thread.currentThread();
+                ClassLoader previous = current.getContextClassLoader();
+                current.setContextClassLoader(realm);
+                try {
+                    if (streaming) {
+                        createDescriptor(puDest, w -> StreamingDescriptorGenerator.persistence(new ByteArrayInputStream(source), w, opts));
+                    } else {
+                        createDescriptor(puDest, opts, xsl.pu.newTransformer(), stream(source));
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } catch (TransformerException e) {
+                    throw new CompletionException(e);
+                } finally {
+                    current.setContextClassLoader(previous);
+                }
+            });
         } else {
-            log.info(String.format("Not generating %s...", PackagerMojo.EJB_DESC.getFileName()));
+            log.info(String.format("Not generating %s...", PackagerMojo.PERSISTENCE_DESC.getFileName()));
+            Files.deleteIfExists(puDest);
+        }
+        try {
+            if (generateEJB) {
+                log.info(String.format("Generating %s to: %s", PackagerMojo.EJB_DESC.getFileName(), ejbDest));
+                if (streaming) {
+                    createDescriptor(ejbDest, w -> StreamingDescriptorGenerator.ejb(new ByteArrayInputStream(source), w, opts));
+                } else {
+                    createDescriptor(ejbDest, opts, xsl.ejb.newTransformer(), stream(source));
+                }
+            } else {
+                log.info(String.format("Not generating %s...", PackagerMojo.EJB_DESC.getFileName()));
+                Files.deleteIfExists(ejbDest);
+            }
+        } finally {
+            try {
+                pu.join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof UncheckedIOException) {
+                    throw ((UncheckedIOException) cause).getCause();
+                } else if (cause instanceof TransformerException) {
+                    throw (TransformerException) cause;
+                }
+                throw e;
+            }
         }
+        fingerprint.store();
+        return outputs.size();
     }
 
-    private void createDescriptor(Path output, Map<String, Object> options, Transformer transformer) throws TransformerException, IOException {
-        final Map<String, Object> opts = Objects.requireNonNull(options);
-        final Path dest = Objects.requireNonNull(output);
+    private void createDescriptor(Path output, Map<String, Object> options, Transformer transformer, StreamSource source) throws TransformerException, IOException {
         final Transformer t = Objects.requireNonNull(transformer);
-        opts.forEach(transformer::setParameter);
+        options.forEach(t::setParameter);
+        createDescriptor(output, w -> t.transform(source, new StreamResult(w)));
+    }
+
+    private void createDescriptor(Path output, Content content) throws TransformerException, IOException {
+        final Path dest = Objects.requireNonNull(output);
+        PackagingEvents.Descriptor event = new PackagingEvents.Descriptor();
+        event.begin();
         Files.createDirectories(dest.getParent());
         if (Files.exists(dest)) {
             Files.delete(dest);
         }
-        try (Reader r = Files.newBufferedReader(sourcePu);
-             Writer w = Files.newBufferedWriter(Files.createFile(dest))) {
-            t.transform(new StreamSource(r), new StreamResult(w));
+        try (Writer w = Files.newBufferedWriter(Files.createFile(dest))) {
+            content.write(w);
+        } catch (XMLStreamException e) {
+            throw new TransformerException(e);
+        }
+        if (event.shouldCommit()) {
+            event.descriptor = dest.toString();
+            event.source = sourcePu.toString();
+            event.bytes = Files.size(dest);
+            event.commit();
         }
     }
 
-    private Transformer getEJBTransformer() throws TransformerConfigurationException {
-        if (ejbTemplate == null) {
-            initialize();
-        }
-        return ejbTemplate.newTransformer();
+    private StreamSource stream(byte[] source) {
+        return new StreamSource(new ByteArrayInputStream(source), sourcePu.toUri().toString());
     }
 
-    private Transformer getPersistenceTransformer() throws TransformerConfigurationException {
-        if (puTemplate == null) {
-            initialize();
+    private static Stylesheets getStylesheets() throws TransformerConfigurationException, IOException {
+        Stylesheets s = stylesheets;
+        if (s == null) {
+            synchronized (DescriptorGenerator.class) {
+                s = stylesheets;
+                if (s == null) {
+                    stylesheets = s = new Stylesheets();
+                }
+            }
         }
-        return puTemplate.newTransformer();
+        return s;
     }
 
-    private synchronized void initialize() throws TransformerConfigurationException {
-        final TransformerFactory transformerFactory = TransformerFactory.newInstance();
-        transformerFactory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
-        transformerFactory.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
-        transformerFactory.setAttribute(XMLConstants.ACCESS_EXTERNAL_STYLESHEET, "");
-        puTemplate = transformerFactory.newTemplates(new StreamSource(DescriptorGenerator.class.getResourceAsStream("pu.xsl")));
-        ejbTemplate = transformerFactory.newTemplates(new StreamSource(DescriptorGenerator.class.getResourceAsStream("ejb.xsl")));
+    @FunctionalInterface
+    private interface Content {
+        void write(Writer w) throws IOException, TransformerException, XMLStreamException;
+    }
+
+    private static final class Stylesheets {
+
+        private final Templates pu;
+        private final Templates ejb;
+        private final String puChecksum;
+        private final String ejbChecksum;
+
+        Stylesheets() throws TransformerConfigurationException, IOException {
+            final TransformerFactory transformerFactory = TransformerFactory.newInstance();
+            transformerFactory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            transformerFactory.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+            transformerFactory.setAttribute(XMLConstants.ACCESS_EXTERNAL_STYLESHEET, "");
+            byte[] puXsl = load("pu.xsl");
+            byte[] ejbXsl = load("ejb.xsl");
+            pu = transformerFactory.newTemplates(new StreamSource(new ByteArrayInputStream(puXsl)));
+            ejb = transformerFactory.newTemplates(new StreamSource(new ByteArrayInputStream(ejbXsl)));
+            puChecksum = new Fingerprint(null).addContent("xsl", puXsl).getValue();
+            ejbChecksum = new Fingerprint(null).addContent("xsl", ejbXsl).getValue();
+        }
+
+        private static byte[] load(String name) throws IOException {
+            try (InputStream is = DescriptorGenerator.class.getResourceAsStream(name)) {
+                if (is == null) {
+                    throw new IOException("cannot find " + name);
+                }
+                return is.readAllBytes();
+            }
+        }
     }
 }
@@ -0,0 +1,393 @@
+/*
+ * Copyright (c) 2022 Oracle and/or its affiliates. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0,
+ * or the Eclipse Distribution License v. 1.0 which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR BSD-3-Clause
+ */
+
+package org.eclipse.persistence.build;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/**
+ * Matcher of archive entry names against Ant-style include and exclude patterns, with the same semantics
+ * as {@link org.codehaus.plexus.util.SelectorUtils#matchPath(String, String, String, boolean)}:
+ * {@code ?} and {@code *} match within a path segment, {@code **} matches any number of segments,
+ * a trailing {@code /} stands for {@code /**}, {@code %regex[...]} patterns match the whole name and
+ * {@code %ant[...]} patterns are plain Ant patterns. Ant patterns are compiled into a trie of path segments
+ * walked once per name, so that patterns sharing a prefix are evaluated together.
+ * Matchers are immutable and shared by all modules built in this JVM.
+ */
+final class EntryMatcher {
+
+    private static final String REGEX_PREFIX = "%regex[";
+    private static final String ANT_PREFIX = "%ant[";
+
+    private static final int MAX_ENTRIES = 64;
+
+    // least recently used matchers
+    private static final Map<String, EntryMatcher> CACHE = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, EntryMatcher> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    });
+
+    static final EntryMatcher ALL = of(null, null);
+
+    private final Patterns includes;
+    private final Patterns excludes;
+    // names excluded as they are, not patterns
+    private final Set<String> removed;
+    private final String key;
+
+    private EntryMatcher(List<String> includes, List<String> excludes, String key) {
+        this.includes = includes.isEmpty() ? null : new Patterns(includes);
+        this.excludes = excludes.isEmpty() ? null : new Patterns(excludes);
+        this.removed = Set.of();
+        this.key = key;
+    }
+
+    private EntryMatcher(EntryMatcher base, Set<String> removed, String key) {
+        this.includes = base.includes;
+        this.excludes = base.excludes;
+        this.removed = removed;
+        this.key = key;
+    }
+
+    /**
+     * Returns the matcher of names matching any of the includes, all names if there are none,
+     * and none of the excludes.
+     */
+    static EntryMatcher of(String[] includes, String[] excludes) {
+        List<String> in = normalize(includes);
+        List<String> ex = normalize(excludes);
+        String key = "includes=" + in + ", excludes=" + ex;
+        return CACHE.computeIfAbsent(key, k -> new EntryMatcher(in, ex, k));
+    }
+
+    static EntryMatcher exclude(String... excludes) {
+        return of(null, excludes);
+    }
+
+    /**
+     * Returns the matcher of names matching this one except the given names, ie classes of a pruned framework.
+     * The names are looked up in a set, the matcher is specific to the caller and not cached,
+     * its canonical form only counts the names and includes their digest.
+     */
+    EntryMatcher without(Collection<String> names) {
+        if (names.isEmpty()) {
+            return this;
+        }
+        Set<String> set = Set.copyOf(names);
+        return new EntryMatcher(this, set, key + ", without=" + set.size() + " names " + digest(new TreeSet<>(set)));
+    }
+
+    /**
+     * Splits a comma separated list of patterns, commas within {@code %regex[...]} and {@code %ant[...]}
+     * patterns do not separate patterns.
+     */
+    static String[] split(String patterns) {
+        if (patterns == null || patterns.isBlank()) {
+            return new String[0];
+        }
+        List<String> result = new ArrayList<>();
+        int start = 0;
+        int depth = 0;
+        for (int i = 0; i < patterns.length(); i++) {
+            char c = patterns.charAt(i);
+            if (depth > 0) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == '[') {
+                    depth++;
+                } else if (c == ']') {
+                    depth--;
+                }
+            } else if (c == ',') {
+                result.add(patterns.substring(start, i));
+                start = i + 1;
+            } else if (patterns.startsWith(REGEX_PREFIX, i) || patterns.startsWith(ANT_PREFIX, i)) {
+                i = patterns.indexOf('[', i);
+                depth = 1;
+            }
+        }
+        result.add(patterns.substring(start));
+        return result.stream().map(String::trim).filter(s -> !s.isEmpty()).toArray(String[]::new);
+    }
+
+    /**
+     * Checks whether the name is included and not excluded.
+     */
+    boolean matches(String name) {
+        return (includes == null || includes.matches(name)) && (excludes == null || !excludes.matches(name))
+                && !removed.contains(name);
+    }
+
+    /**
+     * Checks whether all names match.
+     */
+    boolean isAll() {
+        return includes == null && excludes == null && removed.isEmpty();
+    }
+
+    /**
+     * Canonical form of the patterns, equal for equal matchers.
+     */
+    @Override
+    public String toString() {
+        return key;
+    }
+
+    private static List<String> normalize(String[] patterns) {
+        if (patterns == null) {
+            return List.of();
+        }
+        Set<String> result = new LinkedHashSet<>();
+        for (String pattern : patterns) {
+            if (pattern == null || pattern.isBlank()) {
+                continue;
+            }
+            String p = pattern.trim();
+            if (!p.startsWith(REGEX_PREFIX)) {
+                if (p.startsWith(ANT_PREFIX) && p.endsWith("]")) {
+                    p = p.substring(ANT_PREFIX.length(), p.length() - 1);
+                }
+                p = p.replace('\\', '/');
+                if (p.endsWith("/")) {
+                    p += "**";
+                }
+            }
+            result.add(p);
+        }
+        return List.copyOf(result);
+    }
+
+    private static String digest(Set<String> names) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            for (String name : names) {
+                md.update(name.getBytes(StandardCharsets.UTF_8));
+                md.update((byte) '\n');
+            }
+            StringBuilder sb = new StringBuilder();
+            for (byte b : Arrays.copyOf(md.digest(), 8)) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String[] segments(String path) {
+        String[] tokens = path.split("/", -1);
+        List<String> result = new ArrayList<>(tokens.length);
+        for (int i = 0; i < tokens.length; i++) {
+            // the leading empty segment keeps absolute patterns from matching relative names
+            if (i == 0 || !tokens[i].isEmpty()) {
+                result.add(tokens[i]);
+            }
+        }
+        return result.toArray(new String[0]);
+    }
+
+    /**
+     * Checks whether the segment of the name between {@code from} and {@code to} matches the glob,
+     * in which {@code *} matches any characters and {@code ?} one.
+     */
+    private static boolean matchSegment(String glob, String name, int from, int to) {
+        int g = 0, s = from, star = -1, mark = 0;
+        while (s < to) {
+            if (g < glob.length() && (glob.charAt(g) == '?' || glob.charAt(g) == name.charAt(s))) {
+                g++;
+                s++;
+            } else if (g < glob.length() && glob.charAt(g) == '*') {
+                star = g++;
+                mark = s;
+            } else if (star >= 0) {
+                g = star + 1;
+                s = ++mark;
+            } else {
+                return false;
+            }
+        }
+        while (g < glob.length() && glob.charAt(g) == '*') {
+            g++;
+        }
+        return g == glob.length();
+    }
+
+    private static final class Patterns {
+
+        private final Node root = new Node();
+        private final Pattern[] regexes;
+        private final int size;
+
+        Patterns(List<String> patterns) {
+            List<Pattern> r = new ArrayList<>();
+            for (String p : patterns) {
+                if (p.startsWith(REGEX_PREFIX) && p.endsWith("]")) {
+                    r.add(Pattern.compile(p.substring(REGEX_PREFIX.length(), p.length() - 1)));
+                } else {
+                    add(p);
+                }
+            }
+            regexes = r.toArray(new Pattern[0]);
+            size = root.size();
+        }
+
+        private void add(String pattern) {
+            Node n = root;
+            for (String segment : segments(pattern)) {
+                if ("**".equals(segment)) {
+                    if (n.any == null) {
+                        n.any = new Node();
+                        n.any.recursive = true;
+                    }
+                    n = n.any;
+                } else if (segment.indexOf('*') >= 0 || segment.indexOf('?') >= 0) {
+                    n = n.glob(segment);
+                } else {
+                    n = n.literals.computeIfAbsent(segment, s -> new Node());
+                }
+            }
+            n.terminal = true;
+        }
+
+        boolean matches(String name) {
+            for (Pattern p : regexes) {
+                if (p.matcher(name).matches()) {
+                    return true;
+                }
+            }
+            if (root.isEmpty()) {
+                return false;
+            }
+            // states of the automaton, walked over segments of the name without splitting it
+            Node[] current = new Node[size];
+            Node[] next = new Node[size];
+            int count = enter(root, current, 0);
+            for (int start = 0, end; ; start = end + 1) {
+                end = name.indexOf('/', start);
+                if (end < 0) {
+                    end = name.length();
+                }
+                // the leading empty segment keeps absolute patterns from matching relative names
+                if (end > start || start == 0) {
+                    // only absolute patterns match the leading separator of a name
+                    boolean leading = end == 0;
+                    String segment = null;
+                    int nextCount = 0;
+                    for (int i = 0; i < count; i++) {
+                        Node n = current[i];
+                        if (!n.literals.isEmpty()) {
+                            if (segment == null) {
+                                segment = name.substring(start, end);
+                            }
+                            Node literal = n.literals.get(segment);
+                            if (literal != null) {
+                                nextCount = enter(literal, next, nextCount);
+                            }
+                        }
+                        for (int g = 0; g < n.globs.length && !leading; g++) {
+                            if (matchSegment(n.globs[g], name, start, end)) {
+                                nextCount = enter(n.globNodes[g], next, nextCount);
+                            }
+                        }
+                        if (n.recursive && !leading) {
+                            nextCount = enter(n, next, nextCount);
+                        }
+                    }
+                    if (nextCount == 0) {
+                        return false;
+                    }
+                    Node[] t = current;
+                    current = next;
+                    next = t;
+                    count = nextCount;
+                }
+                if (end == name.length()) {
+                    break;
+                }
+            }
+            for (int i = 0; i < count; i++) {
+                if (current[i].terminal) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // adds the node and nodes reachable by matching zero segments
+        private static int enter(Node n, Node[] states, int count) {
+            for (int i = 0; i < count; i++) {
+                if (states[i] == n) {
+                    return count;
+                }
+            }
+            states[count++] = n;
+            return n.any != null ? enter(n.any, states, count) : count;
+        }
+    }
+
+    private static final class Node {
+
+        private final Map<String, Node> literals = new HashMap<>();
+        private String[] globs = new String[0];
+        private Node[] globNodes = new Node[0];
+        // node following '**'
+        private Node any;
+        // matches any number of segments
+        private boolean recursive;
+        private boolean terminal;
+
+        Node glob(String glob) {
+            for (int i = 0; i < globs.length; i++) {
+                if (globs[i].equals(glob)) {
+                    return globNodes[i];
+                }
+            }
+            Node n = new Node();
+            globs = Arrays.copyOf(globs, globs.length + 1);
+            globNodes = Arrays.copyOf(globNodes, globNodes.length + 1);
+            globs[globs.length - 1] = glob;
+            globNodes[globNodes.length - 1] = n;
+            return n;
+        }
+
+        int size() {
+            int size = 1;
+            for (Node n : literals.values()) {
+                size += n.size();
+            }
+            for (Node n : globNodes) {
+                size += n.size();
+            }
+            return any != null ? size + any.size() : size;
+        }
+
+        boolean isEmpty() {
+            return literals.isEmpty() && globs.length == 0 && any == null && !terminal;
+        }
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2022 Oracle and/or its affiliates. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0,
+ * or the Eclipse Distribution License v. 1.0 which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR BSD-3-Clause
+ */
+
+package org.eclipse.persistence.build;
+
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Resource;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.interpolation.MapBasedValueSource;
+import org.codehaus.plexus.interpolation.PrefixedObjectValueSource;
+import org.codehaus.plexus.interpolation.ValueSource;
+import org.codehaus.plexus.util.DirectoryScanner;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Index of filtered resources. Each file is keyed by its content and the values of expressions
+ * it references, files with unchanged keys are not filtered again and previously filtered
+ * outputs of removed files are deleted.
+ */
+final class FilteringIndex {
+
+    // bump when the way of filtering changes
+    private static final String VERSION = "1";
+
+    private static final Pattern EXPRESSION = Pattern.compile("\\$\\{([^}\\r\\n]+)}|@([^@\\s]+)@");
+
+    private final Path destDir;
+    private final Path state;
+    private final Charset encoding;
+    private final List<ValueSource> sources = new ArrayList<>();
+    private final Properties entries = new Properties();
+    private int modified, total;
+    private long modifiedBytes;
+    // outputs of modified files
+    private final List<Path> outputs = new ArrayList<>();
+
+    FilteringIndex(Path destDir, MavenProject project, MavenSession session, ValueSource properties, String encoding) {
+        this.destDir = destDir;
+        this.state = destDir.resolveSibling(destDir.getFileName() + ".filtered");
+        this.encoding = encoding == null ? Charset.defaultCharset() : Charset.forName(encoding);
+        // all sources an expression can be resolved from by the filtering, in no particular order
+        sources.add(properties);
+        sources.add(new PropertiesValueSource(session.getUserProperties()));
+        sources.add(new PropertiesValueSource(session.getSystemProperties()));
+        sources.add(new PrefixedObjectValueSource(List.of("project.", "pom."), project, true));
+        sources.add(new PrefixedObjectValueSource("session.", session));
+        sources.add(new PrefixedObjectValueSource("settings.", session.getSettings()));
+        sources.add(new MapBasedValueSource(Map.of("maven.build.timestamp", String.valueOf(session.getStartTime()))));
+    }
+
+    /**
+     * Returns given resources restricted to files which need to be filtered.
+     */
+    List<Resource> getModified(List<Resource> resources) throws IOException {
+        Properties previous = new Properties();
+        if (Files.isRegularFile(state)) {
+            try (InputStream is = Files.newInputStream(state)) {
+                previous.load(is);
+            }
+            Files.delete(state);
+        }
+        // later resources override earlier ones
+        Map<String, Resource> files = new LinkedHashMap<>();
+        for (Resource r : resources) {
+            DirectoryScanner ds = new DirectoryScanner();
+            ds.setBasedir(r.getDirectory());
+            ds.addDefaultExcludes();
+            ds.scan();
+            for (String name : ds.getIncludedFiles()) {
+                files.put(name.replace('\\', '/'), r);
+            }
+        }
+        Map<Resource, List<String>> includes = new LinkedHashMap<>();
+        for (Map.Entry<String, Resource> e : files.entrySet()) {
+            String name = e.getKey();
+            String key = getKey(Path.of(e.getValue().getDirectory(), name));
+            entries.setProperty(name, key);
+            Path out = destDir.resolve(name);
+            String stored = previous.getProperty(name);
+            if (stored == null || !stored.equals(key + ":" + size(out))) {
+                includes.computeIfAbsent(e.getValue(), r -> new ArrayList<>()).add(name);
+                modifiedBytes += Files.size(Path.of(e.getValue().getDirectory(), name));
+                outputs.add(out);
+            }
+        }
+        removeStale(files.keySet());
+        List<Resource> result = new ArrayList<>();
+        for (Map.Entry<Resource, List<String>> e : includes.entrySet()) {
+            Resource r = e.getKey().clone();
+            r.setIncludes(e.getValue());
+            result.add(r);
+            modified += e.getValue().size();
+        }
+        total = files.size();
+        return result;
+    }
+
+    /**
+     * Remembers keys of filtered files, call once the filtering succeeded.
+     */
+    void store() throws IOException {
+        Properties p = new Properties();
+        for (String name : entries.stringPropertyNames()) {
+            p.setProperty(name, entries.getProperty(name) + ":" + size(destDir.resolve(name)));
+        }
+        Files.createDirectories(state.getParent());
+        try (OutputStream os = Files.newOutputStream(state)) {
+            p.store(os, null);
+        }
+    }
+
+    int getModified() {
+        return modified;
+    }
+
+    int getTotal() {
+        return total;
+    }
+
+    /**
+     * @return size of files which need to be filtered
+     */
+    long getModifiedBytes() {
+        return modifiedBytes;
+    }
+
+    /**
+     * @return size of filtered outputs of modified files
+     */
+    long getFilteredBytes() throws IOException {
+        long result = 0;
+        for (Path out : outputs) {
+            result += Math.max(0, size(out));
+        }
+        return result;
+    }
+
+    private String getKey(Path file) throws IOException {
+        byte[] content = Files.readAllBytes(file);
+        MessageDigest md = newDigest();
+        md.update((VERSION + '\n' + encoding.name() + '\n').getBytes(encoding));
+        md.update(content);
+        for (String expression : expressions(new String(content, encoding))) {
+            StringBuilder sb = new StringBuilder("\n").append(expression);
+            for (ValueSource source : sources) {
+                sb.append('\n').append(getValue(source, expression));
+            }
+            md.update(sb.toString().getBytes(encoding));
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : md.digest()) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns expressions referenced by files under the given directory.
+     */
+    static Set<String> getExpressions(Path dir, String encoding) throws IOException {
+        Set<String> result = new TreeSet<>();
+        if (!Files.isDirectory(dir)) {
+            return result;
+        }
+        Charset charset = encoding == null ? Charset.defaultCharset() : Charset.forName(encoding);
+        List<Path> files;
+        try (Stream<Path> s = Files.walk(dir)) {
+            files = s.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+        for (Path file : files) {
+            result.addAll(expressions(new String(Files.readAllBytes(file), charset)));
+        }
+        return result;
+    }
+
+    private static Set<String> expressions(String content) {
+        Set<String> expressions = new TreeSet<>();
+        Matcher m = EXPRESSION.matcher(content);
+        while (m.find()) {
+            expressions.add(m.group(1) != null ? m.group(1) : m.group(2));
+        }
+        return expressions;
+    }
+
+    private void removeStale(Set<String> names) throws IOException {
+        if (!Files.isDirectory(destDir)) {
+            return;
+        }
+        Set<Path> current = new HashSet<>();
+        for (String name : names) {
+            current.add(destDir.resolve(name));
+        }
+        List<Path> stale;
+        try (Stream<Path> s = Files.walk(destDir)) {
+            stale = s.filter(Files::isRegularFile).filter(p -> !current.contains(p)).collect(Collectors.toList());
+        }
+        for (Path p : stale) {
+            Files.delete(p);
+        }
+    }
+
+    private static Object getValue(ValueSource source, String expression) {
+        try {
+            return source.getValue(expression);
+        } catch (RuntimeException e) {
+            return e.getClass().getName();
+        }
+    }
+
+    private static long size(Path p) throws IOException {
+        return Files.isRegularFile(p) ? Files.size(p) : -1;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2022 Oracle and/or its affiliates. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0,
+ * or the Eclipse Distribution License v. 1.0 which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR BSD-3-Clause
+ */
+
+package org.eclipse.persistence.build;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Digest of all inputs of the packaging, stored next to the packager work files.
+ * Regular files contribute their path, size and last modification time,
+ * directories contribute the same for each file found under them.
+ */
+final class Fingerprint {
+
+    private final Path stamp;
+    private final MessageDigest digest;
+    private String value;
+
+    Fingerprint(Path stamp) {
+        this.stamp = stamp;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    Fingerprint add(String name, Object value) {
+        update(name + '=' + value);
+        return this;
+    }
+
+    Fingerprint addProperties(Properties properties) {
+        for (String key : new TreeSet<>(properties.stringPropertyNames())) {
+            add(key, properties.getProperty(key));
+        }
+        return this;
+    }
+
+    /**
+     * Adds values of the given keys, missing ones included.
+     */
+    Fingerprint addProperties(String name, Properties properties, Collection<String> keys) {
+        for (String key : new TreeSet<>(keys)) {
+            add(name + '.' + key, properties.getProperty(key));
+        }
+        return this;
+    }
+
+    Fingerprint addContent(String name, byte[] content) {
+        add(name, content.length);
+        digest.update(content);
+        return this;
+    }
+
+    Fingerprint addFiles(String name, Collection<File> files) throws IOException {
+        for (File file : files) {
+            addFile(name, file);
+        }
+        return this;
+    }
+
+    Fingerprint addFile(String name, File file) throws IOException {
+        if (file == null) {
+            return add(name, null);
+        }
+        Path path = file.toPath();
+        if (Files.isDirectory(path)) {
+            add(name, path.toAbsolutePath());
+            List<Path> files;
+            try (Stream<Path> s = Files.walk(path)) {
+                files = s.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+            }
+            for (Path f : files) {
+                update(path.relativize(f) + ":" + Files.size(f) + ":" + Files.getLastModifiedTime(f).toMillis());
+            }
+        } else if (Files.isRegularFile(path)) {
+            add(name, path.toAbsolutePath() + ":" + Files.size(path) + ":" + Files.getLastModifiedTime(path).toMillis());
+        } else {
+            add(name, path.toAbsolutePath() + ":missing");
+        }
+        return this;
+    }
+
+    /**
+     * Checks the stored fingerprint against the current one.
+     *
+     * @param outputs files which must exist for the packaging to be considered up-to-date
+     * @return {@code true} if inputs did not change since the last {@link #store()}
+     */
+    boolean isUpToDate(Collection<File> outputs) throws IOException {
+        for (File f : outputs) {
+            if (!f.isFile()) {
+                return false;
+            }
+        }
+        return Files.isRegularFile(stamp)
+                && getValue().equals(Files.readString(stamp, StandardCharsets.UTF_8).trim());
+    }
+
+    void invalidate() throws IOException {
+        Files.deleteIfExists(stamp);
+    }
+
+    void store() throws IOException {
+        Files.createDirectories(stamp.getParent());
+        Files.writeString(stamp, getValue(), StandardCharsets.UTF_8);
+    }
+
+    String getValue() {
+        if (value == null) {
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest.digest()) {
+                sb.append(String.format("%02x", b));
+            }
+            value = sb.toString();
+        }
+        return value;
+    }
+
+    private void update(String s) {
+        if (value != null) {
+            throw new IllegalStateException("fingerprint already computed");
+        }
+        digest.update(s.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) '\n');
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2022 Oracle and/or its affiliates. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0,
+ * or the Eclipse Distribution License v. 1.0 which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR BSD-3-Clause
+ */
+
+package org.eclipse.persistence.build;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Cache of filtered copies of the test framework jar, keyed by the checksum of the jar
+ * and the filter. Copies keep the compressed data of the original entries.
+ * <p>
+ * The cache is stored on the disk and shared by all modules and builds using the same cache directory;
+ * copies are created under a temporary name and atomically moved in place, the least recently used
+ * copies are evicted once there are more than {@link #MAX_ENTRIES} of them. Copies used since the start
+ * of the session or within the last {@link #MIN_AGE} milliseconds are never evicted, other modules
+ * and builds may still be reading them.
+ */
+final class FrameworkCache {
+
+    static final int MAX_ENTRIES = 16;
+
+    static final long MIN_AGE = 60 * 60 * 1000;
+
+    // checksums of jars by path, size and last modification time
+    private static final Map<String, String> CHECKSUMS = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    });
+
+    // guards creation of copies by parallel module builds
+    private static final Object[] LOCKS = new Object[32];
+
+    static {
+        for (int i = 0; i < LOCKS.length; i++) {
+            LOCKS[i] = new Object();
+        }
+    }
+
+    private final Path dir;
+    private final long sessionStart;
+    private final Log log;
+    private int hits;
+    private int misses;
+
+    FrameworkCache(Path dir, long sessionStart, Log log) {
+        this.dir = dir.resolve("fwk");
+        this.sessionStart = sessionStart;
+        this.log = log;
+    }
+
+    /**
+     * Returns a copy of the given jar with entries matching the filter only.
+     */
+    File getFiltered(File jar, EntryMatcher filter) throws IOException {
+        String key = digest(checksum(jar.toPath()) + '\n' + filter);
+        String name = jar.getName();
+        Path cached = dir.resolve(name.substring(0, name.length() - 4) + "-" + key.substring(0, 32) + ".jar");
+        synchronized (LOCKS[Math.floorMod(key.hashCode(), LOCKS.length)]) {
+            if (Files.isRegularFile(cached)) {
+                log.debug("using cached " + cached);
+                hits++;
+                Files.setLastModifiedTime(cached, FileTime.fromMillis(System.currentTimeMillis()));
+                return cached.toFile();
+            }
+            misses++;
+            Files.createDirectories(dir);
+            Path tmp = Files.createTempFile(dir, name, ".tmp");
+            try {
+                int count = copy(jar, tmp, filter);
+                move(tmp, cached);
+                log.debug(String.format("cached %d entries of %s in %s", count, name, cached));
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        }
+        evict();
+        return cached.toFile();
+    }
+
+    int getHits() {
+        return hits;
+    }
+
+    int getMisses() {
+        return misses;
+    }
+
+    private static int copy(File jar, Path dest, EntryMatcher filter) throws IOException {
+        int count = 0;
+        try (ZipFile zf = new ZipFile(jar);
+             ZipArchiveOutputStream out = new ZipArchiveOutputStream(dest.toFile())) {
+            for (Enumeration<ZipArchiveEntry> en = zf.getEntriesInPhysicalOrder(); en.hasMoreElements(); ) {
+                ZipArchiveEntry e = en.nextElement();
+                if (!filter.matches(e.getName())) {
+                    continue;
+                }
+                try (InputStream is = zf.getRawInputStream(e)) {
+                    out.addRawArchiveEntry(e, is);
+                }
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException e) {
+            // created by another build in the meantime
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void evict() throws IOException {
+        long unused = Math.min(sessionStart, System.currentTimeMillis() - MIN_AGE);
+        List<Path> copies;
+        try (Stream<Path> s = Files.list(dir)) {
+            copies = s.filter(p -> p.getFileName().toString().endsWith(".jar"))
+                    .sorted(Comparator.comparingLong((Path p) -> p.toFile().lastModified()).reversed())
+                    .collect(Collectors.toList());
+        }
+        for (Path p : copies.subList(Math.min(MAX_ENTRIES, copies.size()), copies.size())) {
+            if (p.toFile().lastModified() >= unused) {
+                continue;
+            }
+            log.debug("evicting " + p);
+            try {
+                Files.deleteIfExists(p);
+            } catch (IOException e) {
+                // still open by another build
+                log.debug(String.format("cannot evict %s: %s", p, e.getMessage()));
+            }
+        }
+    }
+
+    static String checksum(Path jar) throws IOException {
+        String id = jar.toAbsolutePath() + ":" + Files.size(jar) + ":" + Files.getLastModifiedTime(jar).toMillis();
+        String checksum = CHECKSUMS.get(id);
+        if (checksum == null) {
+            MessageDigest md = newDigest();
+            byte[] buf = new byte[65536];
+            try (InputStream is = Files.newInputStream(jar)) {
+                for (int n = is.read(buf); n > 0; n = is.read(buf)) {
+                    md.update(buf, 0, n);
+                }
+            }
+            checksum = toHex(md.digest());
+            CHECKSUMS.put(id, checksum);
+        }
+        return checksum;
+    }
+
+    private static String digest(String s) {
+        return toHex(newDigest().digest(s.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2022 Oracle and/or its affiliates. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0,
+ * or the Eclipse Distribution License v. 1.0 which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR BSD-3-Clause
+ */
+
+package org.eclipse.persistence.build;
+
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Finds classes of the test framework which are not reachable from the content of the EJB jar.
+ * Classes are reachable from classes of roots, test runners, classes named in descriptors,
+ * service provider files and manifests, and classes matching the allow-list, and from any reachable class
+ * referencing them in its constant pool. Other entries of the framework are always reachable.
+ */
+final class FrameworkPruner {
+
+    private static final Pattern DESCRIPTOR_TYPE = Pattern.compile("L([\\w/$]+)[;<]");
+    private static final Pattern CLASS_NAME = Pattern.compile("[A-Za-z_$][\\w$]*(?:\\.[A-Za-z_$][\\w$]*)+");
+    private static final String SERVICES = "META-INF/services/";
+    private static final String MANIFEST = "META-INF/MANIFEST.MF";
+
+    private final Log log;
+
+    FrameworkPruner(Log log) {
+        this.log = log;
+    }
+
+    /**
+     * Returns names of class entries of the framework not reachable from given roots.
+     *
+     * @param fwk         framework jar
+     * @param filter      filter of framework entries added to the archive
+     * @param keep        framework entries used reflectively
+     * @param roots       directories and jars with classes of the archive
+     * @param descriptors directories with descriptors of the archive
+     */
+    Set<String> getUnreachable(File fwk, EntryMatcher filter, EntryMatcher keep, List<File> roots, List<Path> descriptors) throws IOException {
+        long start = System.currentTimeMillis();
+        // references of framework classes, keyed by internal names
+        Map<String, Set<String>> classes = new HashMap<>();
+        Deque<String> pending = new ArrayDeque<>();
+        try (ZipFile zf = new ZipFile(fwk)) {
+            for (Enumeration<? extends ZipEntry> en = zf.entries(); en.hasMoreElements(); ) {
+                ZipEntry e = en.nextElement();
+                String name = e.getName();
+                if (e.isDirectory() || !filter.matches(name)) {
+                    continue;
+                }
+                if (isMetadata(name)) {
+                    try (InputStream is = zf.getInputStream(e)) {
+                        addNamedClasses(name, new String(is.readAllBytes(), StandardCharsets.UTF_8), pending);
+                    }
+                }
+                if (!name.endsWith(".class")) {
+                    continue;
+                }
+                String internal = name.substring(0, name.length() - 6);
+                try (InputStream is = zf.getInputStream(e)) {
+                    classes.put(internal, references(is.readAllBytes()));
+                }
+                if (RunnerIndex.isRunner(name) || !keep.isAll() && keep.matches(name)) {
+                    pending.add(internal);
+                }
+            }
+        }
+        for (File root : roots) {
+            addReferences(root, pending);
+        }
+        for (Path dir : descriptors) {
+            for (Path xml : list(dir, ".xml")) {
+                addNamedClasses(null, Files.readString(xml, StandardCharsets.UTF_8), pending);
+            }
+        }
+        Set<String> reachable = new HashSet<>();
+        while (!pending.isEmpty()) {
+            String name = pending.removeFirst();
+            Set<String> refs = classes.get(name);
+            if (refs != null && reachable.add(name)) {
+                pending.addAll(refs);
+            }
+        }
+        Set<String> unreachable = new TreeSet<>();
+        for (String name : classes.keySet()) {
+            if (!reachable.contains(name)) {
+                unreachable.add(name + ".class");
+            }
+        }
+        log.info(String.format("Pruned %d of %d classes of %s in %dms", unreachable.size(), classes.size(),
+                fwk.getName(), System.currentTimeMillis() - start));
+        return unreachable;
+    }
+
+    private static void addReferences(File root, Collection<String> refs) throws IOException {
+        if (root.isDirectory()) {
+            for (Path p : list(root.toPath(), ".class")) {
+                refs.addAll(references(Files.readAllBytes(p)));
+            }
+            for (Path p : list(root.toPath(), "")) {
+                String name = root.toPath().relativize(p).toString().replace(File.separatorChar, '/');
+                if (isMetadata(name)) {
+                    addNamedClasses(name, Files.readString(p, StandardCharsets.UTF_8), refs);
+                }
+            }
+        } else if (root.isFile()) {
+            try (ZipFile zf = new ZipFile(root)) {
+                for (Enumeration<? extends ZipEntry> en = zf.entries(); en.hasMoreElements(); ) {
+                    ZipEntry e = en.nextElement();
+                    if (!e.isDirectory() && e.getName().endsWith(".class")) {
+                        try (InputStream is = zf.getInputStream(e)) {
+                            refs.addAll(references(is.readAllBytes()));
+                        }
+                    } else if (!e.isDirectory() && isMetadata(e.getName())) {
+                        try (InputStream is = zf.getInputStream(e)) {
+                            addNamedClasses(e.getName(), new String(is.readAllBytes(), StandardCharsets.UTF_8), refs);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // service provider files name the service and its providers, manifests name classes by Main-Class and alike
+    private static boolean isMetadata(String name) {
+        return MANIFEST.equalsIgnoreCase(name) || name.startsWith(SERVICES) && name.length() > SERVICES.length();
+    }
+
+    /**
+     * Adds internal names of classes named in the text, and of the service named by the entry, if any.
+     */
+    private static void addNamedClasses(String entry, String text, Collection<String> refs) {
+        if (entry != null && entry.startsWith(SERVICES)) {
+            refs.add(entry.substring(SERVICES.length()).replace('.', '/'));
+        }
+        // long manifest values continue on lines starting with a space
+        Matcher m = CLASS_NAME.matcher(MANIFEST.equalsIgnoreCase(entry) ? text.replaceAll("\r?\n ", "") : text);
+        while (m.find()) {
+            refs.add(m.group().replace('.', '/'));
+        }
+    }
+
+    private static List<Path> list(Path dir, String suffix) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return List.of();
+        }
+        try (Stream<Path> s = Files.walk(dir)) {
+            return s.filter(p -> Files.isRegularFile(p) && p.toString().endsWith(suffix)).collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Returns internal names of classes referenced by the constant pool of the class: class constants,
+     * types in descriptors and signatures, and string constants looking like class names,
+     * which covers most of {@code Class.forName} calls.
+     */
+    static Set<String> references(byte[] classFile) throws IOException {
+        Set<String> result = new HashSet<>();
+        if (classFile.length < 10) {
+            return result;
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(classFile));
+        if (in.readInt() != 0xCAFEBABE) {
+            return result;
+        }
+        in.skipBytes(4);
+        int count = in.readUnsignedShort();
+        String[] utf8 = new String[count];
+        int[] classes = new int[count];
+        int[] strings = new int[count];
+        int classCount = 0, stringCount = 0;
+        for (int i = 1; i < count; i++) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case 1: utf8[i] = in.readUTF(); break;
+                case 7: classes[classCount++] = in.readUnsignedShort(); break;
+                case 8: strings[stringCount++] = in.readUnsignedShort(); break;
+                case 16: case 19: case 20: in.skipBytes(2); break;
+                case 15: in.skipBytes(3); break;
+                case 3: case 4: case 9: case 10: case 11: case 12: case 17: case 18: in.skipBytes(4); break;
+                case 5: case 6: in.skipBytes(8); i++; break;
+                default: throw new IOException("unsupported constant pool tag: " + tag);
+            }
+        }
+        for (int i = 0; i < classCount; i++) {
+            String name = utf8[classes[i]];
+            if (name != null && !name.startsWith("[")) {
+                result.add(name);
+            }
+        }
+        for (int i = 0; i < stringCount; i++) {
+            String value = utf8[strings[i]];
+            if (value != null && CLASS_NAME.matcher(value).matches()) {
+                result.add(value.replace('.', '/'));
+            }
+        }
+        for (String s : utf8) {
+            if (s != null && s.indexOf(';') > 0) {
+                Matcher m = DESCRIPTOR_TYPE.matcher(s);
+                while (m.find()) {
+                    result.add(m.group(1));
+                }
+            }
+        }
+        return result;
+    }
+}
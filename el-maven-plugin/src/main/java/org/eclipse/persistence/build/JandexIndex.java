@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2022 Oracle and/or its affiliates. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0,
+ * or the Eclipse Distribution License v. 1.0 which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR BSD-3-Clause
+ */
+
+package org.eclipse.persistence.build;
+
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+/**
+ * Creates the Jandex annotation index of the content of an archive, so that application servers
+ * do not scan classes on deployment. Jandex is resolved from the repository when the index is
+ * requested and used through reflection, the plugin does not depend on it. Jandex is loaded
+ * for each execution, close the index to release the jar.
+ */
+final class JandexIndex implements Closeable {
+
+    static final String INDEX = "META-INF/jandex.idx";
+
+    private final Log log;
+    private final URLClassLoader loader;
+    private final Constructor<?> indexer;
+    private final Method index;
+    private final Method complete;
+    private final Constructor<?> writer;
+    private final Method write;
+
+    JandexIndex(File jandex, Log log) throws IOException {
+        this.log = log;
+        loader = new URLClassLoader(new URL[]{jandex.toURI().toURL()}, ClassLoader.getPlatformClassLoader());
+        try {
+            Class<?> indexerClass = loader.loadClass("org.jboss.jandex.Indexer");
+            Class<?> indexClass = loader.loadClass("org.jboss.jandex.Index");
+            Class<?> writerClass = loader.loadClass("org.jboss.jandex.IndexWriter");
+            indexer = indexerClass.getConstructor();
+            index = indexerClass.getMethod("index", InputStream.class);
+            complete = indexerClass.getMethod("complete");
+            writer = writerClass.getConstructor(OutputStream.class);
+            write = writerClass.getMethod("write", indexClass);
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            loader.close();
+            throw new IOException("unsupported Jandex: " + jandex, e);
+        }
+    }
+
+    /**
+     * Returns the serialized index of classes among entries of the given writer.
+     */
+    byte[] create(ArchiveWriter entries, String archiveName) throws IOException {
+        long start = System.currentTimeMillis();
+        int count = 0;
+        try {
+            Object i = indexer.newInstance();
+            for (String name : entries.getNames()) {
+                // classes of other releases of multi-release jars are not indexed by servers either
+                if (!name.endsWith(".class") || name.startsWith("META-INF/versions/")) {
+                    continue;
+                }
+                try (InputStream is = entries.open(name)) {
+                    index.invoke(i, is);
+                    count++;
+                } catch (InvocationTargetException e) {
+                    // the server scans classes missing in the index
+                    log.warn(String.format("Cannot index %s of %s: %s", name, archiveName, e.getCause()));
+                }
+            }
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            write.invoke(writer.newInstance(baos), complete.invoke(i));
+            log.info(String.format("Indexed %d classes of %s in %dms", count, archiveName, System.currentTimeMillis() - start));
+            return baos.toByteArray();
+        } catch (InvocationTargetException e) {
+            throw new IOException("cannot index " + archiveName, e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IOException("cannot index " + archiveName, e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        loader.close();
+    }
+}
@@ -22,29 +22,68 @@ import org.apache.maven.project.MavenProject;
 import org.apache.maven.shared.filtering.MavenFilteringException;
 import org.apache.maven.shared.filtering.MavenResourcesExecution;
 import org.apache.maven.shared.filtering.MavenResourcesFiltering;
+import org.codehaus.plexus.archiver.ArchiverException;
 import org.codehaus.plexus.archiver.jar.JarArchiver;
 import org.codehaus.plexus.archiver.jar.ManifestException;
+import org.codehaus.plexus.archiver.util.DefaultArchivedFileSet;
+import org.codehaus.plexus.archiver.util.DefaultFileSet;
+import org.codehaus.plexus.components.io.fileselectors.FileInfo;
+import org.codehaus.plexus.components.io.fileselectors.FileSelector;
+import org.codehaus.plexus.interpolation.ValueSource;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 final class Packager {
 
     private final MavenArchiver archiver;
     private final Log log;
     private File confDir;
+    private String outputTimestamp;
+    private int threads;
+    private int compressionLevel = -1;
+    private String[] storedEntries;
+    private ValueSource properties;
+    private boolean failOnConflicts;
+    private JandexIndex jandex;
+    private PackagerMetrics metrics;
+    private boolean nested;
+    private boolean writeTarget = true;
+    // written by the next archive
+    private ArchiveWriter prepared;
+    private File exploded;
+    // top level entries of the exploded directory written by other packagers
+    private final List<String> retained;
     private final List<Path> resources;
+    private final List<Source> sources;
 
     Packager(Packager p) {
         this(p.archiver.getArchiver(), p.log);
         File f = p.archiver.getArchiver().getDestFile();
-        archiver.getArchiver().addFile(f, f.getName());
+        // the plexus archiver merges the manifest of the next archive into the one configured for the previous one
+        archiver.getArchiver().reset();
+        threads = p.threads;
+        compressionLevel = p.compressionLevel;
+        storedEntries = p.storedEntries;
+        properties = p.properties;
+        failOnConflicts = p.failOnConflicts;
+        metrics = p.metrics;
+        if (p.exploded != null) {
+            retained.add(p.exploded.getName());
+        } else if (p.prepared != null) {
+            sources.add(new Source(p.writeTarget ? f : null, f.getName(), p.prepared));
+        } else {
+            sources.add(new Source(Source.Kind.FILE, f, f.getName(), EntryMatcher.ALL));
+        }
     }
 
     Packager(JarArchiver jarArchiver, Log log) {
@@ -53,6 +92,8 @@ final class Packager {
         archiver.setArchiver(jarArchiver);
         this.log = log;
         resources = new ArrayList<>(1);
+        sources = new ArrayList<>();
+        retained = new ArrayList<>(1);
     }
 
     public void setTarget(File destFile) {
@@ -61,9 +102,76 @@ final class Packager {
     }
 
     public void setOutputTimestamp(String outputTimestamp) {
+        this.outputTimestamp = outputTimestamp;
         archiver.configureReproducible(outputTimestamp);
     }
 
+    /**
+     * Sets the number of threads compressing archive entries. {@code 0} leaves creation
+     * of the archive to the plexus archiver.
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Sets the deflate level, {@code -1} for the default level, {@code 0} to store all entries.
+     * The plexus archiver only supports the default level or no compression.
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * Sets patterns of entries to be stored without compression, ie nested archives.
+     * The plexus archiver stores all nested archives when set.
+     */
+    public void setStoredEntries(String[] storedEntries) {
+        this.storedEntries = storedEntries;
+    }
+
+    /**
+     * Writes the archive only when the archive of the copy constructor is written, streaming it into
+     * its entry without reading the target file back or holding it in memory. Requires {@code threads} to be set.
+     *
+     * @param writeTarget whether the archive is written to the target file too
+     */
+    public void writeNested(boolean writeTarget) {
+        this.nested = true;
+        this.writeTarget = writeTarget;
+    }
+
+    /**
+     * Sets the source of values of {@code @...@} expressions in resources,
+     * project properties are used by default.
+     */
+    public void setProperties(ValueSource properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * Adds the Jandex index of classes of the archive, not copied by the copy constructor.
+     */
+    public void setJandex(JandexIndex jandex) {
+        this.jandex = jandex;
+    }
+
+    /**
+     * Fails creation of the archive when an entry is added by more than one source with different content.
+     * Otherwise such entries are logged, the content of the source added first is used. Without threads,
+     * the sources are only compared when this is set, a Jandex index is added or debug logging is enabled.
+     */
+    public void setFailOnConflicts(boolean failOnConflicts) {
+        this.failOnConflicts = failOnConflicts;
+    }
+
+    /**
+     * Records durations, sizes and entry counts of the filtering and of the creation of the archive.
+     */
+    public void setMetrics(PackagerMetrics metrics) {
+        this.metrics = metrics;
+    }
+
     public void setConfDir(File confDir) {
         this.confDir = confDir;
     }
@@ -75,7 +183,7 @@ final class Packager {
     public void addFile(File file, String prefix) {
         if (file.exists() && file.isFile()) {
             String destName = stripVersion(file.getName());
-            archiver.getArchiver().addFile(file, prefix + destName);
+            sources.add(new Source(Source.Kind.FILE, file, prefix + destName, EntryMatcher.ALL));
             log.debug("adding file: " + prefix + file.getName());
         } else {
             log.debug("skipping file: " + prefix + file.getName());
@@ -83,32 +191,39 @@ final class Packager {
     }
 
     public void addExpanded(File archive) {
-        addExpanded(archive, null);
+        addExpanded(archive, EntryMatcher.ALL);
     }
 
-    public void addExpanded(File archive, String exclusionFilter) {
+    public void addExpanded(File archive, EntryMatcher filter) {
         if (archive.exists() && archive.isFile()) {
-            archiver.getArchiver().addArchivedFileSet(archive, null,
-                    exclusionFilter == null ? null : new String[]{exclusionFilter});
-            log.debug("adding expanded archive: " + archive.getName() + ", exclusions: " + exclusionFilter);
+            sources.add(new Source(Source.Kind.ARCHIVE, archive, null, filter));
+            log.debug("adding expanded archive: " + archive.getName() + ", " + filter);
         } else {
-            log.debug("skipping expanded archive: " + archive.getName() + ", exclusions: " + exclusionFilter);
+            log.debug("skipping expanded archive: " + archive.getName() + ", " + filter);
         }
     }
 
     public void addClasses(File root) {
-        addClasses(root, null);
+        addClasses(root, EntryMatcher.ALL);
     }
 
-    public void addClasses(File root, String[] exclusionFilter) {
+    public void addClasses(File root, EntryMatcher filter) {
         if (root.exists() && root.isDirectory()) {
-            archiver.getArchiver().addDirectory(root, null, exclusionFilter);
-            log.debug("adding directory: " + root.getName() + ", exclusions: " + Arrays.toString(exclusionFilter));
+            sources.add(new Source(Source.Kind.DIRECTORY, root, null, filter));
+            log.debug("adding directory: " + root.getName() + ", " + filter);
         } else {
-            log.debug("skipping directory: " + root.getName() + ", exclusions: " + Arrays.toString(exclusionFilter));
+            log.debug("skipping directory: " + root.getName() + ", " + filter);
         }
     }
 
+    /**
+     * Adds files of the directory replacing entries of the same name added by other sources, ie woven classes.
+     */
+    public void addReplacements(File root) {
+        sources.add(new Source(Source.Kind.REPLACEMENTS, root, null, EntryMatcher.ALL));
+        log.debug("adding replacements: " + root.getName());
+    }
+
     public void addResources(Path resourceDir) {
         resources.add(resourceDir);
     }
@@ -116,7 +231,7 @@ final class Packager {
     public void addTemplate(String template) {
         File t = new File(confDir, template);
         if (t.exists() && t.isFile()) {
-            archiver.getArchiver().addFile(t, "META-INF/templates/" + t.getName());
+            sources.add(new Source(Source.Kind.FILE, t, "META-INF/templates/" + t.getName(), EntryMatcher.ALL));
             log.debug("adding template: " + t.getName());
         } else {
             log.debug("skipping template: " + t.getName());
@@ -125,29 +240,260 @@ final class Packager {
 
     public void createArchive(MavenProject project, MavenSession session, MavenResourcesFiltering filtering, MavenArchiveConfiguration archive)
             throws MavenFilteringException, DependencyResolutionRequiredException, IOException, ManifestException {
+        addFilteredResources(project, session, filtering);
+        File dest = archiver.getArchiver().getDestFile();
+        long start = System.currentTimeMillis();
+        try (PackagerMetrics.Stage stage = metrics().start("archive " + dest.getName())) {
+            if (threads > 0 && nested) {
+                prepared = prepare(project, session, archive);
+                stage.entries(prepared.getNames().size());
+                log.info(String.format("Prepared %s: %d entries, written with the next archive", dest.getName(), prepared.getNames().size()));
+            } else if (threads > 0) {
+                ArchiveWriter writer = prepare(project, session, archive);
+                writer.write(dest);
+                stage.entries(writer.getWrittenEntries()).read(writer.getInputBytes()).written(dest.length());
+                metrics().archive(dest.getName(), dest.length(), writer.getSourceBytes());
+                log.info(String.format("Created %s: %d bytes from %d bytes of content, %d entries (%d bytes) stored without compression, in %dms",
+                        dest.getName(), dest.length(), writer.getInputBytes(), writer.getStoredEntries(), writer.getStoredBytes(),
+                        System.currentTimeMillis() - start));
+                logNested();
+            } else {
+                createPlexusArchive(project, session, archive, stage, start);
+            }
+        }
+    }
+
+    // entries are added by the plexus archiver
+    private void createPlexusArchive(MavenProject project, MavenSession session, MavenArchiveConfiguration archive,
+                                     PackagerMetrics.Stage stage, long start)
+            throws DependencyResolutionRequiredException, IOException, ManifestException {
+        JarArchiver jarArchiver = archiver.getArchiver();
+        File dest = jarArchiver.getDestFile();
+        // MavenArchiver configures the archiver from the archive configuration, which is shared by all archives
+        archive = copy(archive);
+        if (compressionLevel == 0) {
+            archive.setCompress(false);
+        }
+        if (storedEntries != null && storedEntries.length > 0) {
+            archive.setRecompressAddedZips(false);
+        }
+        // the plexus archiver skips duplicates the same way, the index only reports them and feeds Jandex,
+        // it reads all sources, so it is only built when needed
+        Map<String, Long> sourceBytes = null;
+        if (failOnConflicts || jandex != null || log.isDebugEnabled()) {
+            try (ArchiveWriter index = new ArchiveWriter(1, log)) {
+                addSources(index);
+                stage.read(index.getContentBytes());
+                sourceBytes = index.getSourceBytes();
+                checkDuplicates(index);
+                if (jandex != null) {
+                    // added first to replace indexes of expanded archives
+                    Path idx = Paths.get(project.getBuild().getDirectory()).resolve(PackagerMojo.WORK_DIR.resolve(dest.getName() + ".idx"));
+                    Files.createDirectories(idx.getParent());
+                    Files.write(idx, jandex.create(index, dest.getName()));
+                    jarArchiver.addFile(idx.toFile(), JandexIndex.INDEX);
+                }
+            }
+        }
+        for (Source source : sources) {
+            if (source.kind == Source.Kind.REPLACEMENTS) {
+                jarArchiver.addFileSet(source.fileSet());
+            }
+        }
+        for (Source source : sources) {
+            switch (source.kind) {
+                case FILE: jarArchiver.addFile(source.file, source.name); break;
+                case ARCHIVE: jarArchiver.addArchivedFileSet(source.archivedFileSet()); break;
+                case DIRECTORY: jarArchiver.addFileSet(source.fileSet()); break;
+                case REPLACEMENTS: break;
+                default: throw new IllegalStateException("unsupported source: " + source.kind);
+            }
+        }
+        // entries are written by the plexus archiver, the archive is recorded as a single batch
+        PackagingEvents.EntryBatch batch = PackagingEvents.EntryBatch.start(dest.getName());
+        archiver.createArchive(session, project, archive);
+        // the number of entries is not known without reading the archive again
+        batch.bytes = dest.length();
+        batch.commit();
+        stage.written(dest.length());
+        metrics().archive(dest.getName(), dest.length(), sourceBytes != null ? sourceBytes : Map.of());
+        log.info(String.format("Created %s: %d bytes in %dms", dest.getName(), dest.length(), System.currentTimeMillis() - start));
+    }
+
+    /**
+     * Writes the content of the archive as files under the given directory, which is kept in sync
+     * with the content. Files added from the build directory are hard-linked where possible. When created by the copy
+     * constructor, the previous archive is expected to be exploded under this directory already.
+     */
+    public void createExploded(MavenProject project, MavenSession session, MavenResourcesFiltering filtering, MavenArchiveConfiguration archive, File dir)
+            throws MavenFilteringException, DependencyResolutionRequiredException, IOException, ManifestException {
+        addFilteredResources(project, session, filtering);
+        long start = System.currentTimeMillis();
+        ArchiveWriter writer;
+        int count;
+        try (PackagerMetrics.Stage stage = metrics().start("explode " + dir.getName())) {
+            writer = prepare(project, session, archive);
+            // only outputs of the build are linked, never files of the local repository or of shared caches
+            writer.setLinkRoot(Paths.get(project.getBuild().getDirectory()));
+            stage.read(writer.getContentBytes());
+            count = writer.writeDirectory(dir.toPath(), retained);
+            stage.entries(count);
+        }
+        metrics().archive(dir.getName(), writer.getContentBytes(), writer.getSourceBytes());
+        exploded = dir;
+        log.info(String.format("Exploded %s: %d entries, %d linked, %d unchanged, %d removed, in %dms",
+                dir, count, writer.getLinkedEntries(), writer.getUnchangedEntries(), writer.getRemovedEntries(),
+                System.currentTimeMillis() - start));
+    }
+
+    private void addFilteredResources(MavenProject project, MavenSession session, MavenResourcesFiltering filtering)
+            throws MavenFilteringException, IOException {
         List<Resource> res = getResources();
         if (res.isEmpty()) {
             log.debug("skipping directory: " + confDir.getName());
         } else {
             log.debug("filtering resources: " + confDir.getName());
-            File filtered = filterResources(project, session, filtering, res);
+            File filtered;
+            try (PackagerMetrics.Stage stage = metrics().start("filter " + archiver.getArchiver().getDestFile().getName())) {
+                filtered = filterResources(project, session, filtering, res, stage);
+            }
             log.debug("adding resources: " + filtered.getName());
-            archiver.getArchiver().addDirectory(filtered);
+            sources.add(new Source(Source.Kind.DIRECTORY, filtered, null, EntryMatcher.ALL));
+        }
+    }
+
+    // nested archives are written with this one
+    private void logNested() throws IOException {
+        for (Source source : sources) {
+            if (source.kind == Source.Kind.NESTED) {
+                ArchiveWriter writer = source.writer;
+                metrics().archive(source.name, writer.getWrittenBytes(), writer.getSourceBytes());
+                log.info(String.format("Created %s%s: %d bytes from %d bytes of content, %d entries (%d bytes) stored without compression",
+                        source.name, source.file != null ? "" : " (nested only)", writer.getWrittenBytes(), writer.getInputBytes(),
+                        writer.getStoredEntries(), writer.getStoredBytes()));
+            }
+        }
+    }
+
+    private ArchiveWriter prepare(MavenProject project, MavenSession session, MavenArchiveConfiguration archive)
+            throws DependencyResolutionRequiredException, IOException, ManifestException {
+        ArchiveWriter writer = new ArchiveWriter(threads, log);
+        writer.setLevel(compressionLevel);
+        writer.setStored(storedEntries);
+        writer.setTimestamp(archiver.parseOutputTimestamp(outputTimestamp));
+        ByteArrayOutputStream mf = new ByteArrayOutputStream();
+        archiver.getManifest(session, project, archive).write(mf);
+        writer.addContent(ArchiveWriter.MANIFEST, mf.toByteArray());
+        addSources(writer);
+        if (archive.isAddMavenDescriptor()) {
+            String prefix = "META-INF/maven/" + project.getGroupId() + "/" + project.getArtifactId() + "/";
+            writer.addFile(project.getFile(), prefix + "pom.xml");
+            String props = "artifactId=" + project.getArtifactId() + "\n"
+                    + "groupId=" + project.getGroupId() + "\n"
+                    + "version=" + project.getVersion() + "\n";
+            writer.addContent(prefix + "pom.properties", props.getBytes(StandardCharsets.ISO_8859_1));
+        }
+        try {
+            checkDuplicates(writer);
+            if (jandex != null) {
+                writer.replaceContent(JandexIndex.INDEX, jandex.create(writer, archiver.getArchiver().getDestFile().getName()));
+            }
+        } catch (ArchiverException | IOException e) {
+            writer.close();
+            throw e;
+        }
+        return writer;
+    }
+
+    // sources added first take precedence, replacements take precedence over all of them
+    private void addSources(ArchiveWriter writer) throws IOException {
+        for (Source source : sources) {
+            switch (source.kind) {
+                case FILE: writer.addFile(source.file, source.name); break;
+                case ARCHIVE: writer.addArchive(source.file, source.filter); break;
+                case DIRECTORY: writer.addDirectory(source.file, source.filter); break;
+                case NESTED: writer.addNested(source.name, source.writer, source.file); break;
+                case REPLACEMENTS: break;
+            }
+        }
+        for (Source source : sources) {
+            if (source.kind == Source.Kind.REPLACEMENTS) {
+                writer.replaceDirectory(source.file);
+            }
         }
-        archiver.createArchive(session, project, archive);
     }
 
-    private File filterResources(MavenProject project, MavenSession session, MavenResourcesFiltering filtering, List<Resource> resources) throws MavenFilteringException {
+    private void checkDuplicates(ArchiveWriter writer) {
+        String name = archiver.getArchiver().getDestFile().getName();
+        List<String> conflicts = writer.getConflicts();
+        log.debug(String.format("%d duplicate entries in %s", writer.getDuplicateEntries(), name));
+        for (String conflict : conflicts) {
+            log.warn(String.format("Entry of %s added with different content: %s", name, conflict));
+        }
+        if (failOnConflicts && !conflicts.isEmpty()) {
+            throw new ArchiverException(String.format("%d entries of %s added with different content", conflicts.size(), name));
+        }
+    }
+
+    private File filterResources(MavenProject project, MavenSession session, MavenResourcesFiltering filtering, List<Resource> resources,
+                                 PackagerMetrics.Stage stage) throws MavenFilteringException, IOException {
         File destDir = Paths.get(project.getBuild().getDirectory()).resolve(PackagerMojo.WORK_DIR.resolve(confDir.getName())).toFile();
-        MavenResourcesExecution resourceExec = new MavenResourcesExecution(
-                resources, destDir, project, project.getProperties().getProperty("project.build.sourceEncoding"),
-                Collections.emptyList(), List.of("gar"), session);
-        resourceExec.addFilerWrapperWithEscaping(new PropertiesValueSource(project.getProperties()),
-                "@", "@", "\\", true);
-        filtering.filterResources(resourceExec);
+        String encoding = project.getProperties().getProperty("project.build.sourceEncoding");
+        ValueSource values = properties != null ? properties : new PropertiesValueSource(project.getProperties());
+        FilteringIndex index = new FilteringIndex(destDir.toPath(), project, session, values, encoding);
+        List<Resource> modified = index.getModified(resources);
+        log.debug(String.format("filtering %d of %d resources", index.getModified(), index.getTotal()));
+        // resources are filtered one by one in their order, later ones override earlier ones as before
+        for (Resource r : modified) {
+            PackagingEvents.Filtering event = new PackagingEvents.Filtering();
+            event.begin();
+            MavenResourcesExecution resourceExec = new MavenResourcesExecution(
+                    List.of(r), destDir, project, encoding,
+                    Collections.emptyList(), List.of("gar"), session);
+            resourceExec.addFilerWrapperWithEscaping(values,
+                    "@", "@", "\\", true);
+            filtering.filterResources(resourceExec);
+            if (event.shouldCommit()) {
+                event.resource = r.getDirectory();
+                event.files = r.getIncludes().size();
+                for (String include : r.getIncludes()) {
+                    event.bytes += new File(r.getDirectory(), include).length();
+                }
+                event.commit();
+            }
+        }
+        index.store();
+        stage.entries(index.getModified()).read(index.getModifiedBytes()).written(index.getFilteredBytes());
+        metrics().cache("filtering", index.getTotal() - index.getModified(), index.getModified());
         return destDir;
     }
 
+    // metrics are recorded even if not requested
+    private PackagerMetrics metrics() {
+        if (metrics == null) {
+            metrics = new PackagerMetrics(archiver.getArchiver().getDestFile().getName());
+        }
+        return metrics;
+    }
+
+    /**
+     * Returns a copy of the archive configuration, which can be changed without affecting other archives.
+     */
+    static MavenArchiveConfiguration copy(MavenArchiveConfiguration archive) {
+        MavenArchiveConfiguration copy = new MavenArchiveConfiguration();
+        copy.setCompress(archive.isCompress());
+        copy.setRecompressAddedZips(archive.isRecompressAddedZips());
+        copy.setIndex(archive.isIndex());
+        copy.setForced(archive.isForced());
+        copy.setAddMavenDescriptor(archive.isAddMavenDescriptor());
+        copy.setManifestFile(archive.getManifestFile());
+        copy.setManifest(archive.getManifest());
+        copy.setPomPropertiesFile(archive.getPomPropertiesFile());
+        copy.addManifestEntries(archive.getManifestEntries());
+        copy.addManifestSections(archive.getManifestSections());
+        return copy;
+    }
+
     private String stripVersion(String s) {
         int x = s.indexOf('-');
         if (x > 1 && s.contains("member_")) {
@@ -172,4 +518,48 @@ final class Packager {
         r.setFiltering(true);
         return r;
     }
+
+    private static final class Source {
+        enum Kind { FILE, ARCHIVE, DIRECTORY, NESTED, REPLACEMENTS }
+
+        private final Kind kind;
+        private final File file;
+        private final String name;
+        private final EntryMatcher filter;
+        private final ArchiveWriter writer;
+
+        Source(Kind kind, File file, String name, EntryMatcher filter) {
+            this.kind = kind;
+            this.file = file;
+            this.name = name;
+            this.filter = filter;
+            this.writer = null;
+        }
+
+        // the file is the target the nested archive is written to as well, if any
+        Source(File file, String name, ArchiveWriter writer) {
+            this.kind = Kind.NESTED;
+            this.file = file;
+            this.name = name;
+            this.filter = EntryMatcher.ALL;
+            this.writer = writer;
+        }
+
+        // the plexus archiver selects entries by the same filter as ArchiveWriter
+        DefaultArchivedFileSet archivedFileSet() {
+            DefaultArchivedFileSet fs = DefaultArchivedFileSet.archivedFileSet(file);
+            fs.setFileSelectors(new FileSelector[]{this::isSelected});
+            return fs;
+        }
+
+        DefaultFileSet fileSet() {
+            DefaultFileSet fs = DefaultFileSet.fileSet(file);
+            fs.setFileSelectors(new FileSelector[]{this::isSelected});
+            return fs;
+        }
+
+        private boolean isSelected(FileInfo info) {
+            return filter.matches(info.getName().replace('\\', '/'));
+        }
+    }
 }
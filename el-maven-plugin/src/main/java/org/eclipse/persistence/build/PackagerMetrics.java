@@ -0,0 +1,308 @@
+/*
+ * Copyright (c) 2022 Oracle and/or its affiliates. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0,
+ * or the Eclipse Distribution License v. 1.0 which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR BSD-3-Clause
+ */
+
+package org.eclipse.persistence.build;
+
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.SessionData;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Wall time, bytes read and written and entry counts of stages of the packaging, hits of caches
+ * and sources contributing most to the size of archives, written as JSON next to the packager work files.
+ * Values which do not apply to a stage are not written. Metrics of all modules of the session
+ * are collected by {@link TestEar}.
+ */
+final class PackagerMetrics {
+
+    // number of sources contributing to the size of an archive kept
+    static final int MAX_CONTRIBUTORS = 10;
+
+    private static final String SESSION_KEY = PackagerMetrics.class.getName() + ".modules";
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+    private final String module;
+    private final long start = System.currentTimeMillis();
+    private final List<Stage> stages = new ArrayList<>();
+    // hits and misses by cache
+    private final Map<String, long[]> caches = new TreeMap<>();
+    private final Map<String, Object> archives = new LinkedHashMap<>();
+    private boolean upToDate;
+    // heap used when the module started, including garbage of earlier modules and plugins
+    private final long startHeap;
+    private long peakHeap;
+
+    PackagerMetrics(String module) {
+        this.module = module;
+        startHeap = MEMORY.getHeapMemoryUsage().getUsed();
+        peakHeap = startHeap;
+    }
+
+    /**
+     * Starts measuring the stage, which ends when it is closed, also when it fails.
+     */
+    Stage start(String name) {
+        sampleHeap();
+        Stage stage = new Stage(this, name);
+        stages.add(stage);
+        return stage;
+    }
+
+    void cache(String name, long hits, long misses) {
+        long[] counts = caches.computeIfAbsent(name, n -> new long[2]);
+        counts[0] += hits;
+        counts[1] += misses;
+    }
+
+    /**
+     * Records the created archive with the uncompressed size of the content of its sources.
+     */
+    void archive(String name, long size, Map<String, Long> sources) {
+        Map<String, Object> archive = new LinkedHashMap<>();
+        archive.put("bytes", size);
+        Map<String, Object> contributors = new LinkedHashMap<>();
+        sources.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .limit(MAX_CONTRIBUTORS)
+                .forEach(e -> contributors.put(e.getKey(), e.getValue()));
+        archive.put("contributors", contributors);
+        archives.put(name, archive);
+    }
+
+    /**
+     * Marks the module as not packaged, its archives did not change since the last build.
+     */
+    void upToDate() {
+        upToDate = true;
+    }
+
+    long getMillis() {
+        return System.currentTimeMillis() - start;
+    }
+
+    /**
+     * Returns the highest heap use sampled when stages started and ended. Peaks of memory pools are not reset,
+     * they are shared with other modules built at the same time and with the rest of the build.
+     */
+    long getPeakHeap() {
+        sampleHeap();
+        return peakHeap;
+    }
+
+    /**
+     * Returns how much the sampled heap use grew above the use when the module started. Garbage is collected
+     * at any time, the value is an estimate of the heap the packaging needs, not a measurement.
+     */
+    long getHeapGrowth() {
+        return getPeakHeap() - startHeap;
+    }
+
+    private synchronized void sampleHeap() {
+        peakHeap = Math.max(peakHeap, MEMORY.getHeapMemoryUsage().getUsed());
+    }
+
+    /**
+     * Returns the one line summary of durations of completed stages.
+     */
+    String getSummary() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Packaged %s in %dms", module, getMillis()));
+        String sep = ": ";
+        for (Stage s : stages) {
+            if (s.millis >= 0) {
+                sb.append(sep).append(s.name).append(' ').append(s.millis).append("ms");
+                sep = ", ";
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns metrics as maps, lists, strings, numbers and booleans only, so that they can be passed
+     * to the collector loaded by another class realm.
+     */
+    Map<String, Object> toMap() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("module", module);
+        m.put("start", start);
+        m.put("millis", getMillis());
+        m.put("upToDate", upToDate);
+        m.put("peakHeap", getPeakHeap());
+        m.put("heapGrowth", getHeapGrowth());
+        List<Object> stageList = new ArrayList<>();
+        for (Stage s : stages) {
+            Map<String, Object> stage = new LinkedHashMap<>();
+            stage.put("name", s.name);
+            put(stage, "millis", s.millis);
+            put(stage, "bytesRead", s.bytesRead);
+            put(stage, "bytesWritten", s.bytesWritten);
+            put(stage, "entries", s.entries);
+            stageList.add(stage);
+        }
+        m.put("stages", stageList);
+        Map<String, Object> cacheMap = new LinkedHashMap<>();
+        caches.forEach((name, counts) -> {
+            Map<String, Object> cache = new LinkedHashMap<>();
+            cache.put("hits", counts[0]);
+            cache.put("misses", counts[1]);
+            cacheMap.put(name, cache);
+        });
+        m.put("caches", cacheMap);
+        m.put("archives", archives);
+        return m;
+    }
+
+    void write(Path file) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, toJson(toMap()) + '\n', StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Adds metrics of the module to metrics of the session.
+     */
+    void publish(RepositorySystemSession session) {
+        getModules(session).add(toMap());
+    }
+
+    /**
+     * Returns metrics of modules published in the session so far.
+     */
+    @SuppressWarnings("unchecked")
+    static Collection<Map<String, Object>> getModules(RepositorySystemSession session) {
+        SessionData data = session.getData();
+        Queue<Map<String, Object>> modules = (Queue<Map<String, Object>>) data.get(SESSION_KEY);
+        while (modules == null) {
+            data.set(SESSION_KEY, null, new ConcurrentLinkedQueue<Map<String, Object>>());
+            modules = (Queue<Map<String, Object>>) data.get(SESSION_KEY);
+        }
+        return modules;
+    }
+
+    /**
+     * Writes maps, lists, strings, numbers and booleans as JSON, with objects and arrays
+     * of other values on a single line.
+     */
+    static String toJson(Object value) {
+        StringBuilder sb = new StringBuilder();
+        json(sb, value, "");
+        return sb.toString();
+    }
+
+    private static void json(StringBuilder sb, Object value, String indent) {
+        if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            boolean nested = map.values().stream().anyMatch(v -> v instanceof Map || v instanceof List);
+            String next = indent + "  ";
+            sb.append('{');
+            String sep = "";
+            for (Map.Entry<?, ?> e : map.entrySet()) {
+                sb.append(sep).append(nested ? "\n" + next : "");
+                quote(sb, String.valueOf(e.getKey()));
+                sb.append(": ");
+                json(sb, e.getValue(), next);
+                sep = nested ? "," : ", ";
+            }
+            sb.append(nested ? "\n" + indent : "").append('}');
+        } else if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            String next = indent + "  ";
+            sb.append('[');
+            String sep = "";
+            for (Object item : list) {
+                sb.append(sep).append('\n').append(next);
+                json(sb, item, next);
+                sep = ",";
+            }
+            sb.append(list.isEmpty() ? "" : "\n" + indent).append(']');
+        } else if (value instanceof Number || value instanceof Boolean) {
+            sb.append(value);
+        } else if (value == null) {
+            sb.append("null");
+        } else {
+            quote(sb, value.toString());
+        }
+    }
+
+    private static void quote(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+
+    private static void put(Map<String, Object> map, String name, long value) {
+        if (value >= 0) {
+            map.put(name, value);
+        }
+    }
+
+    static final class Stage implements AutoCloseable {
+
+        private final PackagerMetrics metrics;
+        private final String name;
+        private final long start = System.currentTimeMillis();
+        private long millis = -1;
+        private long bytesRead = -1;
+        private long bytesWritten = -1;
+        private long entries = -1;
+
+        private Stage(PackagerMetrics metrics, String name) {
+            this.metrics = metrics;
+            this.name = name;
+        }
+
+        Stage read(long bytes) {
+            bytesRead = bytes;
+            return this;
+        }
+
+        Stage written(long bytes) {
+            bytesWritten = bytes;
+            return this;
+        }
+
+        Stage entries(long count) {
+            entries = count;
+            return this;
+        }
+
+        @Override
+        public void close() {
+            if (millis < 0) {
+                millis = System.currentTimeMillis() - start;
+                metrics.sampleHeap();
+            }
+        }
+    }
+}
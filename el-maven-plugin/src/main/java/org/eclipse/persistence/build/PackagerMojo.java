@@ -13,6 +13,7 @@
 package org.eclipse.persistence.build;
 
 import org.apache.maven.archiver.MavenArchiveConfiguration;
+import org.apache.maven.artifact.DependencyResolutionRequiredException;
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.model.Dependency;
 import org.apache.maven.model.Plugin;
@@ -42,17 +43,14 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 @Mojo(name="package-testapp", defaultPhase = LifecyclePhase.PACKAGE, requiresDependencyResolution = ResolutionScope.TEST, threadSafe = true)
 public final class PackagerMojo extends AbstractMojo {
@@ -61,6 +59,11 @@ public final class PackagerMojo extends AbstractMojo {
     static final Path PERSISTENCE_DESC = Path.of("META-INF", "persistence.xml");
     static final Path WORK_DIR = Path.of("eclipselink-packager");
 
+    /**
+     * Manifest attribute of thin EARs with the checksum of the expected shared library bundle.
+     */
+    static final String SHARED_LIB_ATTRIBUTE = "EclipseLink-Shared-Library-Checksum";
+
     /**
      * The plugin groupId.
      */
@@ -71,20 +74,6 @@ public final class PackagerMojo extends AbstractMojo {
      */
     static final String PLUGIN_ARTIFACT_ID = "eclipselink-testbuild-plugin";
 
-    private static final Map<String, String> RUNNERS = Map.of(
-            "org/eclipse/persistence/testing/framework/jpa/server/TestRunner.class", "",
-            "org/eclipse/persistence/testing/framework/jpa/server/GenericTestRunner.class", "GenericTestRunner",
-            "org/eclipse/persistence/testing/framework/jpa/server/SingleUnitTestRunnerBean.class", "SingleUnitTestRunner",
-            "org/eclipse/persistence/testing/framework/jpa/server/TestRunner1Bean.class", "TestRunner1",
-            "org/eclipse/persistence/testing/framework/jpa/server/TestRunner2Bean.class", "TestRunner2",
-            "org/eclipse/persistence/testing/framework/jpa/server/TestRunner3Bean.class", "TestRunner3",
-            "org/eclipse/persistence/testing/framework/jpa/server/TestRunner4Bean.class", "TestRunner4",
-            "org/eclipse/persistence/testing/framework/jpa/server/TestRunner5Bean.class", "TestRunner5",
-            "org/eclipse/persistence/testing/framework/jpa/server/TestRunner6Bean.class", "TestRunner6"
-    );
-
-    private static final Map<String, String> RUNNERS_CACHE = new ConcurrentHashMap<>(2);
-
     /**
      * The archiver.
      */
@@ -185,7 +174,9 @@ public final class PackagerMojo extends AbstractMojo {
     private List<String> libs;
 
     /**
-     * Archive to build. Default is {@code EAR}.
+     * Archive to build, {@code EAR}, {@code EJB} or {@code EXPLODED}. Default is {@code EAR}.
+     * {@code EXPLODED} writes the content of the EAR with the EJB module under {@code exploded}
+     * in the build directory, nothing is attached to the project.
      */
     @Parameter(property = "el.packager.mode", defaultValue = "EAR")
     private String mode;
@@ -197,11 +188,170 @@ public final class PackagerMojo extends AbstractMojo {
     private boolean generateDescriptors;
 
     /**
-     * Content to exclude from the jpa.test.framework in the target EJB jar
+     * Engine generating server-side descriptors, {@code XSLT} or {@code STAX}. Default is {@code XSLT}.
+     */
+    @Parameter(property = "el.packager.descriptors.engine", defaultValue = "XSLT")
+    private String descriptorsEngine;
+
+    /**
+     * Resolve project properties and their aliases once, fail on aliases of undefined properties.
+     */
+    @Parameter(property = "el.packager.filtering.snapshot", defaultValue = "false")
+    private boolean filteringSnapshot;
+
+    /**
+     * Content to exclude from the jpa.test.framework in the target EJB jar,
+     * comma separated list of Ant patterns and/or {@code %regex[...]} patterns
      */
     @Parameter(property = "el.packager.fwk.exclusionFilter", defaultValue = "%regex[.*TestRunner[0-9].*]")
     private String fwkExclusionFilter;
 
+    /**
+     * Content to include from the jpa.test.framework in the target EJB jar, all content if not set,
+     * comma separated list of Ant patterns and/or {@code %regex[...]} patterns
+     */
+    @Parameter(property = "el.packager.fwk.inclusionFilter")
+    private String fwkInclusionFilter;
+
+    /**
+     * Add only classes of the jpa.test.framework reachable from classes of the EJB jar, test runners
+     * and classes named in descriptors.
+     */
+    @Parameter(property = "el.packager.fwk.prune", defaultValue = "false")
+    private boolean fwkPrune;
+
+    /**
+     * Content of the jpa.test.framework kept when pruning, ie classes used reflectively,
+     * comma separated list of Ant patterns and/or {@code %regex[...]} patterns
+     */
+    @Parameter(property = "el.packager.fwk.keep")
+    private String fwkKeep;
+
+    /**
+     * Number of numbered test runners ({@code TestRunner1}, ...) test classes are spread across,
+     * balanced by durations of test classes in {@code shardsHistory}. Default is {@code 0} which
+     * does not assign test classes to runners.
+     */
+    @Parameter(property = "el.packager.shards", defaultValue = "0")
+    private int shards;
+
+    /**
+     * Durations of test classes from earlier runs: directories with surefire or failsafe reports,
+     * reports or properties files of class names and seconds. The default location is removed by {@code clean},
+     * test classes are spread evenly without durations.
+     */
+    @Parameter(property = "el.packager.shards.history", defaultValue = "${project.build.directory}/failsafe-reports")
+    private File[] shardsHistory;
+
+    /**
+     * Fail the build when packaging takes longer than the given number of milliseconds, {@code 0} for no limit.
+     */
+    @Parameter(property = "el.packager.budget.millis", defaultValue = "0")
+    private long budgetMillis;
+
+    /**
+     * Warn when the heap use grows by more than the given number of megabytes while packaging a module,
+     * {@code 0} for no limit. Heap use is sampled between stages and includes uncollected garbage, unlike
+     * the wall time it does not fail the build. The heap is shared by all modules, the budget is not checked
+     * when modules are built in parallel.
+     */
+    @Parameter(property = "el.packager.budget.heap", defaultValue = "0")
+    private long budgetHeap;
+
+    /**
+     * Fail the build when an entry of an archive is added by more than one source with different content,
+     * otherwise such entries are logged and the source added first wins.
+     */
+    @Parameter(property = "el.packager.failOnConflicts", defaultValue = "false")
+    private boolean failOnConflicts;
+
+    /**
+     * Add the Jandex annotation index of classes as {@code META-INF/jandex.idx} to the EJB jar.
+     */
+    @Parameter(property = "el.packager.jandex", defaultValue = "false")
+    private boolean jandex;
+
+    /**
+     * Coordinates ({@code groupId:artifactId:version}) of Jandex creating the index, ie {@code org.jboss:jandex:2.4.3.Final}
+     * for servers using Jandex 2.
+     */
+    @Parameter(property = "el.packager.jandex.artifact", defaultValue = "io.smallrye:jandex:3.0.5")
+    private String jandexArtifact;
+
+    /**
+     * Weave entity classes of the project and of model jars with EclipseLink from the project's dependencies
+     * when packaging, instead of weaving them on the server.
+     */
+    @Parameter(property = "el.packager.weaving", defaultValue = "false")
+    private boolean weaving;
+
+    /**
+     * Skip re-creating archives when none of the inputs changed since the last build.
+     */
+    @Parameter(property = "el.packager.incremental", defaultValue = "true")
+    private boolean incremental;
+
+    /**
+     * Number of threads compressing archive entries. Default is {@code 0} which leaves creation
+     * of archives to the plexus archiver.
+     */
+    @Parameter(property = "el.packager.threads", defaultValue = "0")
+    private int threads;
+
+    /**
+     * Deflate level of compressed archive entries, {@code -1} for the default level, {@code 0} to store
+     * all entries. Other levels are supported only when {@code threads} is set.
+     */
+    @Parameter(property = "el.packager.compressionLevel", defaultValue = "-1")
+    private int compressionLevel;
+
+    /**
+     * Archive entries stored without compression, nested archives by default. The plexus archiver
+     * stores all nested archives when set.
+     */
+    @Parameter(property = "el.packager.storedEntries", defaultValue = "**/*.jar,**/*.war,**/*.rar")
+    private String[] storedEntries;
+
+    /**
+     * Attach the EJB jar in {@code EAR} mode. With {@code threads} set, the EJB jar is added
+     * to the EAR straight from memory and it is written to the disk only when attached.
+     */
+    @Parameter(property = "el.packager.attachEjb", defaultValue = "true")
+    private boolean attachEjb;
+
+    /**
+     * Reuse filtered content of the jpa.test.framework across modules and builds.
+     */
+    @Parameter(property = "el.packager.fwk.cache", defaultValue = "true")
+    private boolean fwkCache;
+
+    /**
+     * Reference libraries of the EAR from a bundle shared by modules of the reactor through
+     * the {@code Class-Path} manifest attribute of the EJB module instead of embedding them under {@code lib/}.
+     */
+    @Parameter(property = "el.packager.thin", defaultValue = "false")
+    private boolean thin;
+
+    /**
+     * Directory of library bundles shared by thin EARs.
+     */
+    @Parameter(property = "el.packager.sharedLib.directory", defaultValue = "${session.topLevelProject.build.directory}/eclipselink-shared-lib")
+    private File sharedLibDirectory;
+
+    /**
+     * Location of shared libraries used in the {@code Class-Path} of EJB modules of thin EARs, ie a directory
+     * on the server, required unless the EAR is exploded. Locations relative to the root of the exploded EAR
+     * are used if not set.
+     */
+    @Parameter(property = "el.packager.sharedLib.classPath")
+    private String sharedLibClassPath;
+
+    /**
+     * Directory of caches shared across modules and builds.
+     */
+    @Parameter(property = "el.packager.cacheDirectory", defaultValue = "${settings.localRepository}/.cache/eclipselink-packager")
+    private File cacheDirectory;
+
     @Component
     private MavenProjectHelper helper;
 
@@ -223,111 +373,563 @@ public final class PackagerMojo extends AbstractMojo {
             return;
         }
 
-        File destJar = new File(outputDirectory, finalName + "_ejb.jar");
+        if (compressionLevel < -1 || compressionLevel > 9) {
+            throw new MojoExecutionException("invalid compression level: " + compressionLevel);
+        }
+        if (threads == 0 && compressionLevel > 0) {
+            // the plexus archiver either compresses with the default level or stores
+            throw new MojoExecutionException(String.format("compression level %d requires el.packager.threads, only -1 and 0 are supported without it",
+                    compressionLevel));
+        }
+        final boolean exploded = "EXPLODED".equalsIgnoreCase(mode);
+        final boolean ear = exploded || "EAR".equalsIgnoreCase(mode);
+        final PackagerMetrics metrics = new PackagerMetrics(finalName);
+        final Artifacts artifacts = resolveArtifacts(ear, metrics);
+        final EntryMatcher fwkFilter;
+        try {
+            fwkFilter = EntryMatcher.of(EntryMatcher.split(fwkInclusionFilter), EntryMatcher.split(fwkExclusionFilter));
+        } catch (IllegalArgumentException e) {
+            throw new MojoExecutionException("Invalid filter of " + artifacts.fwk.getName() + ": " + e.getMessage(), e);
+        }
+
+        SharedLibrary sharedLib = null;
+        if (ear && thin) {
+            if (!exploded && sharedLibClassPath == null) {
+                // locations relative to the EAR point outside of the archive
+                throw new MojoExecutionException("Thin EAR archives require el.packager.sharedLib.classPath,"
+                        + " the location of shared libraries on the server");
+            }
+            try {
+                sharedLib = SharedLibrary.publish(sharedLibDirectory.toPath(), artifacts.earLibs, getLog());
+            } catch (IOException e) {
+                throw new MojoExecutionException(e.getMessage(), e);
+            }
+        }
+
+        Fingerprint fingerprint = null;
+        if (incremental) {
+            try {
+                fingerprint = createFingerprint(artifacts, sharedLib);
+                if (isUpToDate(fingerprint, ear, exploded, metrics)) {
+                    return;
+                }
+                fingerprint.invalidate();
+            } catch (IOException e) {
+                throw new MojoExecutionException(e.getMessage(), e);
+            }
+        }
+
+        ValueSource props = filteringSnapshot
+                ? PropertiesValueSource.snapshot(project.getProperties())
+                : new PropertiesValueSource(project.getProperties());
         Packager p = new Packager(archiver, getLog());
-        p.setTarget(destJar);
+        p.setProperties(props);
+        p.setMetrics(metrics);
+        p.setFailOnConflicts(failOnConflicts);
+        JandexIndex jandexIndex = null;
+        if (artifacts.jandex != null) {
+            try {
+                jandexIndex = new JandexIndex(artifacts.jandex, getLog());
+            } catch (IOException e) {
+                throw new MojoExecutionException(e.getMessage(), e);
+            }
+            p.setJandex(jandexIndex);
+        }
+        p.setTarget(getDestJar());
         p.setOutputTimestamp(outputTimestamp);
+        p.setThreads(threads);
+        p.setCompressionLevel(compressionLevel);
+        p.setStoredEntries(storedEntries);
+        if (ear && !exploded && threads > 0) {
+            p.writeNested(attachEjb);
+        }
         p.setConfDir(ejbConf);
         try {
-            File fwk = getResolved("org.eclipse.persistence.jpa.test.framework");
-            if (fwk == null) {
-                throw new MojoExecutionException("cannot find dependency on org.eclipse.persistence.jpa.test.framework");
+            addEjbContent(p, artifacts, fwkFilter, props, metrics);
+            createEjb(p, sharedLib, ear, exploded);
+            if (ear) {
+                createEar(new Packager(p), artifacts, sharedLib, exploded);
             }
-            p.addExpanded(fwk, fwkExclusionFilter);
-            if (generateDescriptors) {
-                Path puXml = Paths.get(project.getResources().get(0).getDirectory()).resolve(PERSISTENCE_DESC);
-                if (Files.isRegularFile(puXml)) {
-                    DescriptorGenerator gen = new DescriptorGenerator(puXml, getLog());
-                    gen.ejbDescriptor(Files.notExists(ejbConf.toPath().resolve(EJB_DESC)));
-                    gen.persistenceDescriptor(Files.notExists(ejbConf.toPath().resolve(PERSISTENCE_DESC)));
-                    ValueSource props = new PropertiesValueSource(project.getProperties());
-                    Map<String, Object> options = new HashMap<>();
-                    options.put("generator.id", String.format("EclipseLink Build Plugin (%s:%s:%s)", PackagerMojo.PLUGIN_GROUP_ID, PackagerMojo.PLUGIN_ARTIFACT_ID, getPluginVersion()));
-                    options.put("data-source-type", props.getValue("persistence-unit.data-source-type"));
-                    options.put("data-source-name", props.getValue("persistence-unit.data-source-name"));
-                    options.put("db.platform", props.getValue("db.platform"));
-                    options.put("server.platform", props.getValue("server.platform"));
-                    options.put("server.weaving", props.getValue("persistence-unit.server-weaving"));
-                    try {
-                        options.put("testRunners", getRunners(fwk, fwkExclusionFilter));
-                    } catch (UnsupportedOperationException uoe) {
-                        gen.ejbDescriptor(false);
-                        getLog().warn(uoe.getMessage());
-                    }
-                    Path generatedFolder = Paths.get(project.getBuild().getDirectory()).resolve(WORK_DIR.resolve("generated"));
-                    gen.generate(generatedFolder, options);
-                    p.addResources(generatedFolder);
-                } else {
-                    getLog().warn(String.format("Cannot find %s resource to generate server-side descriptors from.", PERSISTENCE_DESC));
+        } finally {
+            // daemon JVMs would keep the jar open
+            if (jandexIndex != null) {
+                try {
+                    jandexIndex.close();
+                } catch (IOException e) {
+                    getLog().debug("cannot close Jandex: " + e.getMessage());
                 }
             }
-        } catch (ArtifactResolutionException | IOException | TransformerException e) {
-            throw new MojoExecutionException(e);
         }
-        Dependency memberDep = getMemberArtifact();
-        if (memberDep != null) {
+
+        if (fingerprint != null) {
             try {
-                Artifact member = DependencyResolver.resolveArtifact(memberDep, remoteRepos, repoSystem, repoSession);
-                p.addExpanded(member.getFile());
-            } catch (Throwable t) {
-                throw new MojoExecutionException(t.getMessage(), t);
+                fingerprint.store();
+            } catch (IOException e) {
+                throw new MojoExecutionException(e.getMessage(), e);
             }
         }
-        for (Dependency testArtifact : getTestArtifacts()) {
-            try {
-                Artifact tests = DependencyResolver.resolveArtifact(testArtifact, remoteRepos, repoSystem, repoSession);
-                p.addExpanded(tests.getFile(), "%regex[.*META-INF/.*]");
-            } catch (Throwable t) {
-                throw new MojoExecutionException(t.getMessage(), t);
+        report(metrics);
+    }
+
+    /**
+     * Checks whether the archives are up-to-date with the fingerprint, attaches them if so.
+     */
+    private boolean isUpToDate(Fingerprint fingerprint, boolean ear, boolean exploded, PackagerMetrics metrics) throws IOException {
+        List<File> outputs = exploded
+                ? List.of(new File(getExplodedEar(), ArchiveWriter.MANIFEST), new File(getExplodedJar(), ArchiveWriter.MANIFEST))
+                : !ear ? List.of(getDestJar()) : attachEjb ? List.of(getDestJar(), getDestEar()) : List.of(getDestEar());
+        boolean upToDate = fingerprint.isUpToDate(outputs);
+        metrics.cache("fingerprint", upToDate ? 1 : 0, upToDate ? 0 : 1);
+        if (!upToDate) {
+            return false;
+        }
+        getLog().info("Test application is up-to-date, skipping packaging...");
+        metrics.upToDate();
+        metrics.publish(repoSession);
+        if (!exploded) {
+            if (!ear || attachEjb) {
+                helper.attachArtifact(project, "jar", "ejb", getDestJar());
+            }
+            if (ear) {
+                helper.attachArtifact(project, "jar", "ear", getDestEar());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds generated descriptors, the framework, test runners, jars and classes of the module to the EJB jar.
+     */
+    private void addEjbContent(Packager p, Artifacts artifacts, EntryMatcher fwkFilter, ValueSource props, PackagerMetrics metrics)
+            throws MojoExecutionException {
+        // added after the framework, which is pruned by classes named in the generated descriptors
+        Path generatedFolder = null;
+        // numbered test runners added to the EJB jar for test classes assigned to them
+        List<String> shardRunners = List.of();
+        if (generateDescriptors) {
+            Path puXml = getSourcePersistenceXml();
+            if (Files.isRegularFile(puXml)) {
+                RunnerIndex runnerIndex = new RunnerIndex(cacheDirectory.toPath(), getLog());
+                shardRunners = getShardRunners(runnerIndex, artifacts.fwk);
+                generatedFolder = generateDescriptors(puXml, runnerIndex, artifacts, fwkFilter, shardRunners, props, metrics);
+            } else {
+                getLog().warn(String.format("Cannot find %s resource to generate server-side descriptors from.", PERSISTENCE_DESC));
+            }
+        }
+        final EntryMatcher testsFilter = EntryMatcher.exclude("**/META-INF/**");
+        final EntryMatcher classesFilter = EntryMatcher.exclude("META-INF/persistence.xml", "META-INF/sessions.xml", "*.jar");
+        if (weaving) {
+            p.addReplacements(weave(artifacts, classesFilter, testsFilter, metrics));
+        }
+        if (fwkPrune) {
+            // pruned content is specific to the module, it is not shared by the cache
+            p.addExpanded(artifacts.fwk, fwkFilter.without(prune(artifacts, fwkFilter, generatedFolder, metrics)));
+        } else {
+            addFramework(p, metrics, artifacts.fwk, fwkFilter);
+        }
+        if (!shardRunners.isEmpty()) {
+            List<String> runnerEntries = new ArrayList<>();
+            for (String runner : shardRunners) {
+                runnerEntries.add("**/" + runner + "Bean.class");
+                runnerEntries.add("**/" + runner + ".class");
             }
+            p.addExpanded(artifacts.fwk, EntryMatcher.of(runnerEntries.toArray(new String[0]), null));
+        }
+        if (generatedFolder != null) {
+            p.addResources(generatedFolder);
+        }
+        if (artifacts.member != null) {
+            p.addExpanded(artifacts.member);
+        }
+        for (File test : artifacts.tests) {
+            p.addExpanded(test, testsFilter);
         }
-        p.addClasses(classesDirectory, new String[]{"META-INF/persistence.xml", "META-INF/sessions.xml", "*.jar"});
+        p.addClasses(classesDirectory, classesFilter);
         p.addClasses(testClassesDirectory);
         p.addTemplate("META-INF/persistence.xml");
         p.addTemplate("META-INF/sessions.xml");
+    }
+
+    private void createEjb(Packager p, SharedLibrary sharedLib, boolean ear, boolean exploded) throws MojoExecutionException {
+        // the archive configuration is shared by both archives and by later executions
+        MavenArchiveConfiguration ejbArchive = archive;
+        if (sharedLib != null) {
+            // relative locations are resolved against the root of the exploded EAR
+            ejbArchive = sharedLib.moduleArchive(archive, sharedLibClassPath, getExplodedEar().toPath());
+        }
+        create(p, ejbArchive, exploded ? getExplodedJar() : null);
+        if (!ear || (attachEjb && !exploded)) {
+            helper.attachArtifact(project, "jar", "ejb", getDestJar());
+        }
+    }
+
+    private void createEar(Packager p, Artifacts artifacts, SharedLibrary sharedLib, boolean exploded) throws MojoExecutionException {
+        p.setTarget(getDestEar());
+        p.setOutputTimestamp(outputTimestamp);
+        p.setConfDir(earConf);
+        MavenArchiveConfiguration earArchive = archive;
+        if (sharedLib == null) {
+            for (File lib : artifacts.earLibs) {
+                p.addFile(lib, "lib/");
+            }
+        } else {
+            earArchive = sharedLib.earArchive(archive);
+        }
+        for (File m : artifacts.members) {
+            p.addFile(m);
+        }
+        create(p, earArchive, exploded ? getExplodedEar() : null);
+        if (!exploded) {
+            helper.attachArtifact(project, "jar", "ear", getDestEar());
+        }
+    }
+
+    /**
+     * Resolves the framework, the member, test and model jars, libraries and members of the EAR and Jandex.
+     */
+    private Artifacts resolveArtifacts(boolean ear, PackagerMetrics metrics) throws MojoExecutionException {
+        final Dependency fwkDep = getArtifact("org.eclipse.persistence.jpa.test.framework");
+        if (fwkDep == null) {
+            throw new MojoExecutionException("cannot find dependency on org.eclipse.persistence.jpa.test.framework");
+        }
+        final Dependency memberDep = getMemberArtifact();
+        final List<Dependency> testDeps = getTestArtifacts();
+        final List<Dependency> earLibDeps = new ArrayList<>();
+        final List<Dependency> memberDeps = new ArrayList<>();
+        if (ear) {
+            for (String artifactId : List.of("org.eclipse.persistence.core.test.framework", "junit")) {
+                Dependency lib = getArtifact(artifactId);
+                if (lib == null) {
+                    throw new MojoExecutionException("cannot find dependency on " + artifactId);
+                }
+                earLibDeps.add(lib);
+            }
+            memberDeps.addAll(getMemberArtifacts());
+        }
+        Dependency jandexDep = null;
+        if (jandex) {
+            String[] gav = jandexArtifact.split(":");
+            if (gav.length != 3) {
+                throw new MojoExecutionException("invalid Jandex coordinates: " + jandexArtifact);
+            }
+            jandexDep = new Dependency();
+            jandexDep.setGroupId(gav[0]);
+            jandexDep.setArtifactId(gav[1]);
+            jandexDep.setVersion(gav[2]);
+        }
+        List<Dependency> deps = new ArrayList<>();
+        deps.add(fwkDep);
+        if (memberDep != null) {
+            deps.add(memberDep);
+        }
+        deps.addAll(testDeps);
+        deps.addAll(earLibDeps);
+        deps.addAll(memberDeps);
+        if (jandexDep != null) {
+            deps.add(jandexDep);
+        }
+        final Map<String, Artifact> resolved;
+        try (PackagerMetrics.Stage resolution = metrics.start("resolve")) {
+            resolved = DependencyResolver.resolveArtifacts(deps, remoteRepos, repoSystem, repoSession);
+            long resolvedBytes = 0;
+            for (Artifact a : resolved.values()) {
+                resolvedBytes += a.getFile().length();
+            }
+            resolution.entries(resolved.size()).read(resolvedBytes);
+        } catch (ArtifactResolutionException e) {
+            throw new MojoExecutionException(e.getMessage(), e);
+        }
+        Artifacts artifacts = new Artifacts();
+        artifacts.fwk = getResolved(resolved, fwkDep);
+        artifacts.member = memberDep == null ? null : getResolved(resolved, memberDep);
+        artifacts.tests = getResolved(resolved, testDeps);
+        artifacts.earLibs = getResolved(resolved, earLibDeps);
+        artifacts.members = getResolved(resolved, memberDeps);
+        artifacts.jandex = jandexDep == null ? null : getResolved(resolved, jandexDep);
+        for (Dependency dep : testDeps) {
+            if ("test-jar".equals(dep.getType())) {
+                artifacts.testJars.add(getResolved(resolved, dep));
+            }
+            if ("model".equals(dep.getClassifier())) {
+                artifacts.models.add(getResolved(resolved, dep));
+            }
+        }
+        return artifacts;
+    }
+
+    /**
+     * Returns numbered test runners of the framework test classes are spread across, none without sharding.
+     */
+    private List<String> getShardRunners(RunnerIndex runnerIndex, File fwk) throws MojoExecutionException {
+        if (shards <= 0) {
+            return List.of();
+        }
+        List<String> runners;
         try {
-            p.createArchive(project, session, mavenResourcesFiltering, archive);
-        } catch (Throwable t) {
-            throw new MojoExecutionException(t.getMessage(), t);
+            runners = TestShards.numberedRunners(runnerIndex.getRunners(fwk, EntryMatcher.ALL));
+        } catch (IOException e) {
+            throw new MojoExecutionException(e.getMessage(), e);
         }
-        helper.attachArtifact(project, "jar", "ejb", destJar);
+        if (runners.size() < shards) {
+            getLog().warn(String.format("Cannot find %d numbered test runners in %s, using %d",
+                    shards, fwk.getName(), runners.size()));
+        }
+        return runners.subList(0, Math.min(shards, runners.size()));
+    }
 
-        if ("EAR".equalsIgnoreCase(mode)) {
-            p = new Packager(p);
-            destJar = new File(outputDirectory, finalName + ".ear");
-            p.setTarget(destJar);
-            p.setOutputTimestamp(outputTimestamp);
-            p.setConfDir(earConf);
-            try {
-                File f = getResolved("org.eclipse.persistence.core.test.framework");
-                if (f == null) {
-                    throw new MojoExecutionException("cannot find dependency on org.eclipse.persistence.core.test.framework");
+    /**
+     * Generates server-side descriptors from the persistence.xml of the module, returns the folder they are in.
+     */
+    private Path generateDescriptors(Path puXml, RunnerIndex runnerIndex, Artifacts artifacts, EntryMatcher fwkFilter,
+                                     List<String> shardRunners, ValueSource props, PackagerMetrics metrics) throws MojoExecutionException {
+        try {
+            DescriptorGenerator gen = new DescriptorGenerator(puXml, getLog());
+            gen.ejbDescriptor(Files.notExists(ejbConf.toPath().resolve(EJB_DESC)));
+            gen.persistenceDescriptor(Files.notExists(ejbConf.toPath().resolve(PERSISTENCE_DESC)));
+            gen.streaming("STAX".equalsIgnoreCase(descriptorsEngine));
+            Map<String, Object> options = new HashMap<>();
+            options.put("generator.id", String.format("EclipseLink Build Plugin (%s:%s:%s)", PackagerMojo.PLUGIN_GROUP_ID, PackagerMojo.PLUGIN_ARTIFACT_ID, getPluginVersion()));
+            options.put("data-source-type", props.getValue("persistence-unit.data-source-type"));
+            options.put("data-source-name", props.getValue("persistence-unit.data-source-name"));
+            options.put("db.platform", props.getValue("db.platform"));
+            options.put("server.platform", props.getValue("server.platform"));
+            options.put("server.weaving", weaving ? "static" : props.getValue("persistence-unit.server-weaving"));
+            String runners;
+            try (PackagerMetrics.Stage scan = metrics.start("runners")) {
+                runners = runnerIndex.getRunners(artifacts.fwk, fwkFilter);
+                scan.entries(runners.isEmpty() ? 0 : runners.split(" ").length);
+            }
+            metrics.cache("runners", runnerIndex.getHits(), runnerIndex.getMisses());
+            Path generatedFolder = Paths.get(project.getBuild().getDirectory()).resolve(WORK_DIR.resolve("generated"));
+            Map<String, List<String>> testShards = null;
+            if (!shardRunners.isEmpty()) {
+                List<File> testRoots = new ArrayList<>();
+                testRoots.add(testClassesDirectory);
+                testRoots.addAll(artifacts.testJars);
+                TestShards sharding = new TestShards(getLog());
+                for (File history : shardsHistory) {
+                    sharding.readHistory(history);
                 }
-                p.addFile(f, "lib/");
-                f = getResolved("junit");
-                if (f == null) {
-                    throw new MojoExecutionException("cannot find dependency on junit");
+                if (!sharding.hasHistory()) {
+                    // the default location is removed by clean and written only after packaging
+                    getLog().warn("No durations of test classes found in " + Arrays.toString(shardsHistory)
+                            + ", test classes are spread evenly; set el.packager.shards.history to reports kept across builds");
+                }
+                testShards = sharding.assign(shardRunners, TestShards.testClasses(testRoots));
+                for (String runner : shardRunners) {
+                    if (!(' ' + runners + ' ').contains(' ' + runner + ' ')) {
+                        runners = (runners + ' ' + runner).trim();
+                    }
                 }
-                p.addFile(f, "lib/");
-            } catch (ArtifactResolutionException e) {
-                throw new RuntimeException(e);
+                options.put("runnerTests", TestShards.format(testShards, " "));
             }
-            List<Dependency> memberDeps = getMemberArtifacts();
-            for (Dependency member : memberDeps) {
-                try {
-                    Artifact m = DependencyResolver.resolveArtifact(member, remoteRepos, repoSystem, repoSession);
-                    p.addFile(m.getFile());
-                } catch (Throwable t) {
-                    throw new MojoExecutionException(t.getMessage(), t);
+            options.put("testRunners", runners);
+            try (PackagerMetrics.Stage descriptors = metrics.start("descriptors")) {
+                int count = gen.generate(generatedFolder, options);
+                long written = 0;
+                if (count > 0) {
+                    for (Path desc : List.of(PERSISTENCE_DESC, EJB_DESC)) {
+                        written += generatedFolder.resolve(desc).toFile().length();
+                    }
                 }
+                descriptors.entries(count).read(Files.size(puXml)).written(written);
+            }
+            if (testShards != null) {
+                TestShards.store(generatedFolder.resolve(TestShards.MAPPING), testShards);
+            } else {
+                Files.deleteIfExists(generatedFolder.resolve(TestShards.MAPPING));
             }
+            return generatedFolder;
+        } catch (IOException | TransformerException e) {
+            throw new MojoExecutionException(e);
+        }
+    }
+
+    /**
+     * Weaves entity classes of the module and of model jars, returns the directory with woven classes.
+     */
+    private File weave(Artifacts artifacts, EntryMatcher classesFilter, EntryMatcher testsFilter, PackagerMetrics metrics)
+            throws MojoExecutionException {
+        Path configured = ejbConf.toPath().resolve(PERSISTENCE_DESC);
+        Path generated = Paths.get(project.getBuild().getDirectory()).resolve(WORK_DIR.resolve("generated")).resolve(PERSISTENCE_DESC);
+        Path puXml = Files.isRegularFile(configured) ? configured
+                : generateDescriptors && Files.isRegularFile(generated) ? generated : getSourcePersistenceXml();
+        try {
+            Path workDir = Paths.get(project.getBuild().getDirectory()).resolve(WORK_DIR.resolve("weaving"));
+            StaticWeaver weaver = new StaticWeaver(project.getTestClasspathElements(), workDir, getLog());
+            try (PackagerMetrics.Stage ignored = metrics.start("weaving")) {
+                return weaver.weave(puXml, classesDirectory, classesFilter, artifacts.models, testsFilter);
+            }
+        } catch (IOException | DependencyResolutionRequiredException e) {
+            throw new MojoExecutionException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns names of classes of the framework not reachable from the content of the EJB jar.
+     */
+    private Set<String> prune(Artifacts artifacts, EntryMatcher fwkFilter, Path generatedFolder, PackagerMetrics metrics)
+            throws MojoExecutionException {
+        List<File> roots = new ArrayList<>(artifacts.tests);
+        if (artifacts.member != null) {
+            roots.add(artifacts.member);
+        }
+        roots.add(classesDirectory);
+        roots.add(testClassesDirectory);
+        List<Path> descriptors = new ArrayList<>();
+        descriptors.add(ejbConf.toPath());
+        if (generatedFolder != null) {
+            descriptors.add(generatedFolder);
+        }
+        try (PackagerMetrics.Stage prune = metrics.start("prune")) {
+            Set<String> unreachable = new FrameworkPruner(getLog()).getUnreachable(artifacts.fwk, fwkFilter,
+                    EntryMatcher.of(EntryMatcher.split(fwkKeep), null), roots, descriptors);
+            prune.entries(unreachable.size());
+            return unreachable;
+        } catch (IOException e) {
+            throw new MojoExecutionException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Creates the archive, or its exploded directory when given.
+     */
+    private void create(Packager p, MavenArchiveConfiguration archiveConfiguration, File explodedDir) throws MojoExecutionException {
+        try {
+            if (explodedDir != null) {
+                p.createExploded(project, session, mavenResourcesFiltering, archiveConfiguration, explodedDir);
+            } else {
+                p.createArchive(project, session, mavenResourcesFiltering, archiveConfiguration);
+            }
+        } catch (Throwable t) {
+            throw new MojoExecutionException(t.getMessage(), t);
+        }
+    }
+
+    private void report(PackagerMetrics metrics) throws MojoExecutionException {
+        Path metricsFile = Paths.get(project.getBuild().getDirectory()).resolve(WORK_DIR.resolve(finalName + ".metrics.json"));
+        try {
+            metrics.write(metricsFile);
+        } catch (IOException e) {
+            getLog().warn("Cannot write packaging metrics: " + e.getMessage());
+        }
+        getLog().info(metrics.getSummary());
+        metrics.publish(repoSession);
+        checkBudget(metrics);
+    }
+
+    private void checkBudget(PackagerMetrics metrics) throws MojoExecutionException {
+        long millis = metrics.getMillis();
+        if (budgetMillis > 0 && millis > budgetMillis) {
+            throw new MojoExecutionException(String.format("Packaging of %s took %dms, the budget is %dms",
+                    finalName, millis, budgetMillis));
+        }
+        if (budgetHeap > 0 && session.isParallel()) {
+            getLog().warn("Heap budget of " + finalName + " is not checked, modules are built in parallel");
+            return;
+        }
+        long heap = metrics.getHeapGrowth() / (1024 * 1024);
+        if (budgetHeap > 0 && heap > budgetHeap) {
+            getLog().warn(String.format("Heap use grew by %dMB while packaging %s, the budget is %dMB",
+                    heap, finalName, budgetHeap));
+        }
+    }
+
+    private void addFramework(Packager p, PackagerMetrics metrics, File fwk, EntryMatcher filter) {
+        if (fwkCache && !filter.isAll()) {
             try {
-                p.createArchive(project, session, mavenResourcesFiltering, archive);
-            } catch (Throwable t) {
-                throw new MojoExecutionException(t.getMessage(), t);
+                FrameworkCache cache = new FrameworkCache(cacheDirectory.toPath(), session.getStartTime().getTime(), getLog());
+                p.addExpanded(cache.getFiltered(fwk, filter));
+                metrics.cache("fwk", cache.getHits(), cache.getMisses());
+                return;
+            } catch (IOException e) {
+                getLog().warn("Cannot use cached content of " + fwk.getName() + ": " + e.getMessage());
             }
-            helper.attachArtifact(project, "jar", "ear", destJar);
         }
+        p.addExpanded(fwk, filter);
+    }
+
+    private Fingerprint createFingerprint(Artifacts artifacts, SharedLibrary sharedLib) throws IOException {
+        Path stamp = Paths.get(project.getBuild().getDirectory()).resolve(WORK_DIR.resolve(finalName + ".fingerprint"));
+        // user and system properties override project properties in filtered resources
+        String encoding = project.getProperties().getProperty("project.build.sourceEncoding");
+        Set<String> filtered = new TreeSet<>(project.getProperties().stringPropertyNames());
+        filtered.addAll(FilteringIndex.getExpressions(ejbConf.toPath(), encoding));
+        filtered.addAll(FilteringIndex.getExpressions(earConf.toPath(), encoding));
+        List<File> weavingClassPath = new ArrayList<>();
+        if (weaving) {
+            try {
+                for (String element : project.getTestClasspathElements()) {
+                    weavingClassPath.add(new File(element));
+                }
+            } catch (DependencyResolutionRequiredException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+        }
+        return new Fingerprint(stamp)
+                .add("plugin.version", getPluginVersion())
+                .add("mode", mode.toUpperCase(Locale.ROOT))
+                .add("descriptors", generateDescriptors)
+                .add("descriptors.engine", descriptorsEngine.toUpperCase(Locale.ROOT))
+                .add("filtering.snapshot", filteringSnapshot)
+                .add("outputDirectory", outputDirectory.getAbsolutePath())
+                .add("fwk.exclusionFilter", fwkExclusionFilter)
+                .add("fwk.inclusionFilter", fwkInclusionFilter)
+                .add("failOnConflicts", failOnConflicts)
+                .add("weaving", weaving)
+                .add("fwk.prune", fwkPrune)
+                .add("fwk.keep", fwkKeep)
+                .add("shards", shards)
+                .add("jandex", jandex ? jandexArtifact : null)
+                .add("outputTimestamp", outputTimestamp)
+                .add("threads", threads > 0)
+                .add("attachEjb", attachEjb)
+                .add("compressionLevel", compressionLevel)
+                .add("storedEntries", Arrays.toString(storedEntries))
+                .add("libs", libs)
+                .add("sharedLib", sharedLib == null ? null : sharedLib.getChecksum())
+                .add("sharedLib.classPath", sharedLibClassPath)
+                .add("sharedLib.directory", sharedLib == null ? null : sharedLibDirectory.getAbsolutePath())
+                .add("archive.manifestEntries", new TreeMap<>(archive.getManifestEntries()))
+                .add("archive.compress", archive.isCompress())
+                .add("archive.recompressAddedZips", archive.isRecompressAddedZips())
+                .addProperties(project.getProperties())
+                .addProperties("user", session.getUserProperties(), filtered)
+                .addProperties("system", session.getSystemProperties(), filtered)
+                .addFile("archive.manifestFile", archive.getManifestFile())
+                .addFile("pom", project.getFile())
+                .addFile("fwk", artifacts.fwk)
+                .addFile("member", artifacts.member)
+                .addFiles("test", artifacts.tests)
+                .addFiles("lib", artifacts.earLibs)
+                .addFiles("members", artifacts.members)
+                .addFile("classes", classesDirectory)
+                .addFile("testClasses", testClassesDirectory)
+                .addFile("ejbConf", ejbConf)
+                .addFile("earConf", earConf)
+                .addFile("persistence.xml", getSourcePersistenceXml().toFile())
+                .addFiles("shards.history", shards > 0 ? Arrays.asList(shardsHistory) : List.of())
+                .addFiles("weaving.classPath", weavingClassPath);
+    }
+
+    private File getDestJar() {
+        return new File(outputDirectory, finalName + "_ejb.jar");
+    }
+
+    private File getDestEar() {
+        return new File(outputDirectory, finalName + ".ear");
+    }
+
+    private File getExplodedEar() {
+        return new File(outputDirectory, "exploded/" + getDestEar().getName());
+    }
+
+    private File getExplodedJar() {
+        return new File(getExplodedEar(), getDestJar().getName());
+    }
+
+    private Path getSourcePersistenceXml() {
+        return Paths.get(project.getResources().get(0).getDirectory()).resolve(PERSISTENCE_DESC);
     }
 
     private Dependency getArtifact(String artifactId) {
@@ -353,8 +955,9 @@ public final class PackagerMojo extends AbstractMojo {
         List<Dependency> members = new ArrayList<>();
         for (Dependency dependency : project.getDependencies()) {
             if (dependency.getArtifactId().contains("member")) {
-                dependency.setClassifier("ejb");
-                members.add(dependency);
+                Dependency member = dependency.clone();
+                member.setClassifier("ejb");
+                members.add(member);
             }
         }
         return members;
@@ -370,35 +973,16 @@ public final class PackagerMojo extends AbstractMojo {
         return tests;
     }
 
-    private File getResolved(String artifactId) throws ArtifactResolutionException {
-        Dependency dep = getArtifact(artifactId);
-        if (dep != null) {
-            return DependencyResolver.resolveArtifact(dep, remoteRepos, repoSystem, repoSession).getFile();
-        }
-        return null;
+    private File getResolved(Map<String, Artifact> resolved, Dependency dep) {
+        return resolved.get(DependencyResolver.getCoordinates(dep)).getFile();
     }
 
-    private String getRunners(File file, String filter) {
-        return RUNNERS_CACHE.computeIfAbsent(filter, (f) -> {
-            Set<String> result = new HashSet<>();
-            if (f.startsWith("%regex[")) {
-                final Pattern pattern = Pattern.compile(f.substring(7, f.lastIndexOf(']')));
-                try (JarFile jf = new JarFile(file)) {
-                    try (Stream<JarEntry> stream = jf.stream()) {
-                        stream.filter((x) -> x.getName().contains("TestRunner"))
-                                .filter((x) -> !(pattern.matcher(x.getName()).matches()))
-                                .map((x) -> RUNNERS.getOrDefault(x.getName(), x.getName().substring(x.getName().lastIndexOf('/') + 1, x.getName().lastIndexOf('.'))))
-                                .collect(Collectors.toCollection(() -> result));
-                    }
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
-                }
-            } else {
-                //TODO
-                throw new UnsupportedOperationException("non-regex filters are not supported yet, ejb-jar.xml won't be generated.");
-            }
-            return String.join(" ", result).trim();
-        });
+    private List<File> getResolved(Map<String, Artifact> resolved, List<Dependency> deps) {
+        List<File> files = new ArrayList<>(deps.size());
+        for (Dependency dep : deps) {
+            files.add(getResolved(resolved, dep));
+        }
+        return files;
     }
 
     private String getPluginVersion() {
@@ -409,4 +993,17 @@ public final class PackagerMojo extends AbstractMojo {
         }
         return "unknown";
     }
+
+    // resolved files of dependencies packaged into the archives
+    private static final class Artifacts {
+        private File fwk;
+        private File member;
+        private List<File> tests;
+        private List<File> earLibs;
+        private List<File> members;
+        private File jandex;
+        // test jars, and model jars among tests
+        private final List<File> testJars = new ArrayList<>();
+        private final List<File> models = new ArrayList<>();
+    }
 }
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2022 Oracle and/or its affiliates. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0,
+ * or the Eclipse Distribution License v. 1.0 which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR BSD-3-Clause
+ */
+
+package org.eclipse.persistence.build;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder events of the packaging, recorded only when a recording with these
+ * events enabled is running, ie started by {@code -XX:StartFlightRecording} in {@code MAVEN_OPTS}.
+ * The duration of each event is the duration of the operation, artifacts resolved together are timed by their batch.
+ */
+final class PackagingEvents {
+
+    private static final String CATEGORY = "EclipseLink Packager";
+
+    private PackagingEvents() {
+    }
+
+    @Name("org.eclipse.persistence.build.ArtifactResolution")
+    @Label("Artifact Resolution")
+    @Description("Dependency resolved from the session cache or by an artifact batch, which times the resolution")
+    @Category(CATEGORY)
+    static final class ArtifactResolution extends Event {
+
+        @Label("Artifact")
+        String artifact;
+
+        @Label("Size")
+        @DataAmount
+        long bytes;
+
+        @Label("Cached")
+        @Description("Resolved earlier in the session")
+        boolean cached;
+    }
+
+    @Name("org.eclipse.persistence.build.ArtifactBatch")
+    @Label("Artifact Batch")
+    @Description("Resolution of dependencies missing in the session cache by a single request")
+    @Category(CATEGORY)
+    static final class ArtifactBatch extends Event {
+
+        @Label("Artifacts")
+        int artifacts;
+
+        @Label("Size")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("org.eclipse.persistence.build.EntryBatch")
+    @Label("Archive Entry Batch")
+    @Description("Entries written to an archive")
+    @Category(CATEGORY)
+    static final class EntryBatch extends Event {
+
+        @Label("Archive")
+        String archive;
+
+        @Label("Entries")
+        int entries;
+
+        @Label("Written")
+        @DataAmount
+        long bytes;
+
+        static EntryBatch start(String archive) {
+            EntryBatch batch = new EntryBatch();
+            batch.archive = archive;
+            batch.begin();
+            return batch;
+        }
+
+        /**
+         * Adds a written entry, returns the next batch when this one is complete.
+         */
+        EntryBatch add(long written, int size) {
+            entries++;
+            bytes += written;
+            if (entries < size) {
+                return this;
+            }
+            commit();
+            return start(archive);
+        }
+
+        void complete() {
+            if (entries > 0) {
+                commit();
+            }
+        }
+    }
+
+    @Name("org.eclipse.persistence.build.Descriptor")
+    @Label("Descriptor Generation")
+    @Description("Generation of a server-side descriptor by an XSL transformation or by the streaming generator")
+    @Category(CATEGORY)
+    static final class Descriptor extends Event {
+
+        @Label("Descriptor")
+        String descriptor;
+
+        @Label("Source")
+        String source;
+
+        @Label("Written")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("org.eclipse.persistence.build.Filtering")
+    @Label("Resources Filtering")
+    @Description("Filtering of modified files of a resource directory")
+    @Category(CATEGORY)
+    static final class Filtering extends Event {
+
+        @Label("Resource")
+        String resource;
+
+        @Label("Files")
+        int files;
+
+        @Label("Read")
+        @DataAmount
+        long bytes;
+    }
+}
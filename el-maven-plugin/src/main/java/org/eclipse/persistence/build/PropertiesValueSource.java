@@ -10,10 +10,14 @@
  * SPDX-License-Identifier: EPL-2.0 OR BSD-3-Clause
  */
 
+
 package org.eclipse.persistence.build;
 
+import org.codehaus.plexus.interpolation.AbstractValueSource;
 import org.codehaus.plexus.interpolation.PropertiesBasedValueSource;
+import org.codehaus.plexus.interpolation.ValueSource;
 
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
 
@@ -23,35 +27,96 @@ final class PropertiesValueSource extends PropertiesBasedValueSource {
         super(properties);
     }
 
+    /**
+     * Returns a value source resolving all properties and aliases of the given properties once.
+     * Later changes of properties are not visible to the returned value source. Looking up an alias
+     * of a property which is not defined fails with {@link IllegalStateException}.
+     */
+    static ValueSource snapshot(Properties properties) {
+        PropertiesValueSource source = new PropertiesValueSource(properties);
+        Map<String, Object> values = new HashMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            values.put(key, properties.getProperty(key));
+        }
+        Map<String, String> missing = new HashMap<>();
+        for (Map.Entry<String, String> alias : ALIASES.entrySet()) {
+            Object value = source.getValue(alias.getKey());
+            if (value != null) {
+                values.put(alias.getKey(), value);
+            } else {
+                missing.put(alias.getKey(), alias.getValue());
+            }
+        }
+        if (properties.getProperty("eclipselink.logging.level") != null) {
+            values.put("eclipselink.logging.level", source.getValue("eclipselink.logging.level"));
+        } else {
+            missing.put("eclipselink.logging.level", "eclipselink.logging.level");
+        }
+        if (properties.getProperty("server.platform") != null) {
+            values.put("server-platform-class", source.getValue("server-platform-class"));
+        } else {
+            missing.put("server-platform-class", "server.platform");
+        }
+        return new Snapshot(Map.copyOf(values), Map.copyOf(missing));
+    }
+
     @Override
     public Object getValue(String expression) {
-        String exp;
         switch (expression) {
-            case "default": exp = "persistence-unit.name"; break;
-            case "data-source-name" :
-            case "session-data-source-name": exp = "persistence-unit.data-source-name"; break;
-            case "data-source2-name" : exp = "persistence-unit.data-source2-name"; break;
-            case "data-source3-name" : exp = "persistence-unit.data-source3-name"; break;
-            case "datasource-type": exp = "persistence-unit.data-source-type"; break;
-            case "transaction-type": exp = "persistence-unit.transaction-type"; break;
-            case "server-platform": exp = "server.platform"; break;
-            case "server-platform-class": return PLATFORM_TO_CLASS.getOrDefault(super.getValue("server.platform"), "server-platform-class");
-            case "database-platform": exp = "db.platform"; break;
-            case "database2-platform": exp = "db2.platform"; break;
-            case "database3-platform": exp = "db3.platform"; break;
-            case "server-weaving": exp = "persistence-unit.server-weaving"; break;
-            case "eclipselink.logging.level": return ((String) super.getValue("eclipselink.logging.level")).toLowerCase();
+            case "server-platform-class": {
+                Object platform = super.getValue("server.platform");
+                return platform == null ? null : PLATFORM_TO_CLASS.getOrDefault(platform, "server-platform-class");
+            }
+            case "eclipselink.logging.level": {
+                Object level = super.getValue("eclipselink.logging.level");
+                return level == null ? null : level.toString().toLowerCase();
+            }
             default:
-                exp = expression;
+                return super.getValue(ALIASES.getOrDefault(expression, expression));
         }
-//        System.out.println("looking for: " + expression + " - exp - " + exp);
-//        System.out.println("to return: " + super.getValue(exp));
-        return super.getValue(exp);
     }
 
+    private static final Map<String, String> ALIASES = Map.ofEntries(
+            Map.entry("default", "persistence-unit.name"),
+            Map.entry("data-source-name", "persistence-unit.data-source-name"),
+            Map.entry("session-data-source-name", "persistence-unit.data-source-name"),
+            Map.entry("data-source2-name", "persistence-unit.data-source2-name"),
+            Map.entry("data-source3-name", "persistence-unit.data-source3-name"),
+            Map.entry("datasource-type", "persistence-unit.data-source-type"),
+            Map.entry("transaction-type", "persistence-unit.transaction-type"),
+            Map.entry("server-platform", "server.platform"),
+            Map.entry("database-platform", "db.platform"),
+            Map.entry("database2-platform", "db2.platform"),
+            Map.entry("database3-platform", "db3.platform"),
+            Map.entry("server-weaving", "persistence-unit.server-weaving")
+    );
+
     private static final Map<Object, String> PLATFORM_TO_CLASS = Map.of(
             "JBoss", "jboss-platform",
             "weblogic", "org.eclipse.persistence.platform.server.wls.WebLogic_12_Platform",
             "Glassfish", "glassfish-platform"
     );
+
+    private static final class Snapshot extends AbstractValueSource {
+
+        private final Map<String, Object> values;
+        // aliases of undefined properties
+        private final Map<String, String> missing;
+
+        Snapshot(Map<String, Object> values, Map<String, String> missing) {
+            super(false);
+            this.values = values;
+            this.missing = missing;
+        }
+
+        @Override
+        public Object getValue(String expression) {
+            Object value = values.get(expression);
+            if (value == null && missing.containsKey(expression)) {
+                throw new IllegalStateException(String.format("Property '%s' referenced by '%s' is not defined",
+                        missing.get(expression), expression));
+            }
+            return value;
+        }
+    }
 }
@@ -0,0 +1,254 @@
+/*
+ * Copyright (c) 2022 Oracle and/or its affiliates. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0,
+ * or the Eclipse Distribution License v. 1.0 which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR BSD-3-Clause
+ */
+
+package org.eclipse.persistence.build;
+
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Index of test runners available in the jpa.test.framework jar, keyed by the jar's path, size,
+ * last modification time and the filter. The index is kept in memory for the session
+ * and persisted under the cache directory, so that repeated builds do not scan the jar.
+ * Both are bounded to {@link #MAX_ENTRIES} least recently used entries, stored entries used within
+ * the last {@link #MIN_AGE} milliseconds are never evicted. Stored entries are shared by builds, an entry
+ * which cannot be read is a miss.
+ */
+final class RunnerIndex {
+
+    static final int MAX_ENTRIES = 64;
+
+    static final long MIN_AGE = FrameworkCache.MIN_AGE;
+
+    private static final Map<String, String> RUNNERS = Map.of(
+            "org/eclipse/persistence/testing/framework/jpa/server/TestRunner.class", "",
+            "org/eclipse/persistence/testing/framework/jpa/server/GenericTestRunner.class", "GenericTestRunner",
+            "org/eclipse/persistence/testing/framework/jpa/server/SingleUnitTestRunnerBean.class", "SingleUnitTestRunner",
+            "org/eclipse/persistence/testing/framework/jpa/server/TestRunner1Bean.class", "TestRunner1",
+            "org/eclipse/persistence/testing/framework/jpa/server/TestRunner2Bean.class", "TestRunner2",
+            "org/eclipse/persistence/testing/framework/jpa/server/TestRunner3Bean.class", "TestRunner3",
+            "org/eclipse/persistence/testing/framework/jpa/server/TestRunner4Bean.class", "TestRunner4",
+            "org/eclipse/persistence/testing/framework/jpa/server/TestRunner5Bean.class", "TestRunner5",
+            "org/eclipse/persistence/testing/framework/jpa/server/TestRunner6Bean.class", "TestRunner6"
+    );
+
+    private static final Map<String, String> INDEX = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    });
+
+    private static final int EOCD_SIG = 0x06054b50;
+    private static final int CEN_SIG = 0x02014b50;
+
+    private final Path dir;
+    private final Log log;
+    // lookups answered from memory or from the disk, and lookups scanning the jar
+    private int hits;
+    private int misses;
+
+    RunnerIndex(Path cacheDir, Log log) {
+        this.dir = cacheDir.resolve("runners");
+        this.log = log;
+    }
+
+    /**
+     * Returns space separated names of test runners found in the given jar and matching the filter.
+     */
+    String getRunners(File jar, EntryMatcher filter) throws IOException {
+        Path p = jar.toPath();
+        String key = digest(p.toAbsolutePath() + ":" + Files.size(p) + ":" + Files.getLastModifiedTime(p).toMillis() + ":" + filter);
+        String runners = INDEX.get(key);
+        if (runners != null) {
+            hits++;
+            return runners;
+        }
+        Path stored = dir.resolve(key + ".txt");
+        runners = read(stored);
+        if (runners != null) {
+            touch(stored);
+            hits++;
+        } else {
+            runners = scan(p, filter);
+            store(stored, runners);
+            misses++;
+        }
+        INDEX.put(key, runners);
+        return runners;
+    }
+
+    int getHits() {
+        return hits;
+    }
+
+    int getMisses() {
+        return misses;
+    }
+
+    private String scan(Path jar, EntryMatcher filter) throws IOException {
+        Set<String> result = new TreeSet<>();
+        for (String name : entryNames(jar)) {
+            if (isRunner(name) && filter.matches(name)) {
+                result.add(RUNNERS.getOrDefault(name, name.substring(name.lastIndexOf('/') + 1, name.lastIndexOf('.'))));
+            }
+        }
+        log.debug("scanned test runners of " + jar.getFileName());
+        return String.join(" ", result).trim();
+    }
+
+    static boolean isRunner(String entryName) {
+        return entryName.contains("TestRunner");
+    }
+
+    /**
+     * Reads names of entries from the central directory of the given archive only.
+     */
+    static List<String> entryNames(Path archive) throws IOException {
+        try (FileChannel ch = FileChannel.open(archive, StandardOpenOption.READ)) {
+            long size = ch.size();
+            // end of central directory record is 22 bytes followed by up to 64k of comment
+            int tailSize = (int) Math.min(size, 22 + 0xFFFF);
+            MappedByteBuffer tail = ch.map(FileChannel.MapMode.READ_ONLY, size - tailSize, tailSize);
+            tail.order(ByteOrder.LITTLE_ENDIAN);
+            int eocd = -1;
+            for (int i = tailSize - 22; i >= 0; i--) {
+                if (tail.getInt(i) == EOCD_SIG) {
+                    eocd = i;
+                    break;
+                }
+            }
+            if (eocd < 0) {
+                throw new IOException("not a zip archive: " + archive);
+            }
+            int count = tail.getShort(eocd + 10) & 0xFFFF;
+            long cenSize = tail.getInt(eocd + 12) & 0xFFFFFFFFL;
+            long cenOffset = tail.getInt(eocd + 16) & 0xFFFFFFFFL;
+            if (count == 0xFFFF || cenSize == 0xFFFFFFFFL || cenOffset == 0xFFFFFFFFL) {
+                // zip64
+                try (JarFile jf = new JarFile(archive.toFile()); Stream<JarEntry> s = jf.stream()) {
+                    return s.map(JarEntry::getName).collect(Collectors.toList());
+                }
+            }
+            MappedByteBuffer cen = ch.map(FileChannel.MapMode.READ_ONLY, cenOffset, cenSize);
+            cen.order(ByteOrder.LITTLE_ENDIAN);
+            List<String> names = new ArrayList<>(count);
+            byte[] buf = new byte[256];
+            for (int pos = 0; pos + 46 <= cenSize && cen.getInt(pos) == CEN_SIG; ) {
+                int nameLength = cen.getShort(pos + 28) & 0xFFFF;
+                int extraLength = cen.getShort(pos + 30) & 0xFFFF;
+                int commentLength = cen.getShort(pos + 32) & 0xFFFF;
+                if (buf.length < nameLength) {
+                    buf = new byte[nameLength];
+                }
+                cen.position(pos + 46);
+                cen.get(buf, 0, nameLength);
+                names.add(new String(buf, 0, nameLength, StandardCharsets.UTF_8));
+                pos += 46 + nameLength + extraLength + commentLength;
+            }
+            return names;
+        }
+    }
+
+    // another build may evict the entry at any time
+    private String read(Path stored) {
+        try {
+            return Files.readString(stored, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            if (Files.exists(stored)) {
+                log.debug("cannot read test runners index: " + e.getMessage());
+            }
+            return null;
+        }
+    }
+
+    private void store(Path stored, String runners) {
+        try {
+            Files.createDirectories(dir);
+            Path tmp = Files.createTempFile(dir, "runners", ".tmp");
+            try {
+                Files.writeString(tmp, runners, StandardCharsets.UTF_8);
+                try {
+                    Files.move(tmp, stored, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tmp, stored, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+            evict();
+        } catch (IOException e) {
+            log.debug("cannot store test runners index: " + e.getMessage());
+        }
+    }
+
+    private void evict() throws IOException {
+        long unused = System.currentTimeMillis() - MIN_AGE;
+        List<Path> stored;
+        try (Stream<Path> s = Files.list(dir)) {
+            stored = s.filter(p -> p.getFileName().toString().endsWith(".txt"))
+                    .sorted(Comparator.comparingLong((Path p) -> p.toFile().lastModified()).reversed())
+                    .collect(Collectors.toList());
+        }
+        for (Path p : stored.subList(Math.min(MAX_ENTRIES, stored.size()), stored.size())) {
+            if (p.toFile().lastModified() < unused) {
+                Files.deleteIfExists(p);
+            }
+        }
+    }
+
+    private static void touch(Path p) {
+        try {
+            Files.setLastModifiedTime(p, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // only affects eviction order
+        }
+    }
+
+    private static String digest(String s) {
+        try {
+            StringBuilder sb = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(s.getBytes(StandardCharsets.UTF_8))) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2022 Oracle and/or its affiliates. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0,
+ * or the Eclipse Distribution License v. 1.0 which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR BSD-3-Clause
+ */
+
+package org.eclipse.persistence.build;
+
+import org.apache.maven.archiver.MavenArchiveConfiguration;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Bundle of libraries shared by thin EARs instead of embedding them. Bundles are directories
+ * named by the checksum of their content, so that all modules of a reactor depending on the same
+ * libraries share one bundle, and an EAR can record which bundle it expects.
+ */
+final class SharedLibrary {
+
+    static final String CHECKSUM_FILE = "bundle.sha256";
+
+    private final Path dir;
+    private final Log log;
+    private final String checksum;
+    private final List<Path> libs;
+
+    private SharedLibrary(Path dir, String checksum, List<Path> libs, Log log) {
+        this.dir = dir;
+        this.checksum = checksum;
+        this.libs = libs;
+        this.log = log;
+    }
+
+    /**
+     * Returns the bundle of given libraries under the given directory, creating it if it does not exist.
+     */
+    static SharedLibrary publish(Path parent, List<File> libs, Log log) throws IOException {
+        List<Path> sorted = libs.stream().map(File::toPath)
+                .sorted(Comparator.comparing((Path p) -> p.getFileName().toString()))
+                .collect(Collectors.toList());
+        StringBuilder content = new StringBuilder();
+        for (Path lib : sorted) {
+            content.append(FrameworkCache.checksum(lib)).append("  ").append(lib.getFileName()).append('\n');
+        }
+        String checksum = digest(content.toString());
+        Path dir = parent.resolve(checksum.substring(0, 16));
+        List<Path> files = new ArrayList<>(sorted.size());
+        for (Path lib : sorted) {
+            files.add(dir.resolve(lib.getFileName()));
+        }
+        SharedLibrary bundle = new SharedLibrary(dir, checksum, files, log);
+        // modules of the reactor built in parallel publish the same bundle
+        synchronized (SharedLibrary.class) {
+            if (Files.isRegularFile(dir.resolve(CHECKSUM_FILE))) {
+                log.debug("using shared library " + dir);
+                return bundle;
+            }
+            Files.createDirectories(parent);
+            Path tmp = Files.createTempDirectory(parent, "bundle");
+            try {
+                for (Path lib : sorted) {
+                    Files.copy(lib, tmp.resolve(lib.getFileName()), StandardCopyOption.COPY_ATTRIBUTES);
+                }
+                String expected = content.append(checksum).append('\n').toString();
+                Files.writeString(tmp.resolve(CHECKSUM_FILE), expected, StandardCharsets.UTF_8);
+                try {
+                    try {
+                        Files.move(tmp, dir, StandardCopyOption.ATOMIC_MOVE);
+                    } catch (AtomicMoveNotSupportedException e) {
+                        Files.move(tmp, dir);
+                    }
+                    log.info("Created shared library " + dir);
+                } catch (FileSystemException e) {
+                    // created by another build in the meantime, moving onto it fails with DirectoryNotEmptyException on Linux
+                    Path stored = dir.resolve(CHECKSUM_FILE);
+                    if (!Files.isRegularFile(stored) || !expected.equals(Files.readString(stored, StandardCharsets.UTF_8))) {
+                        throw e;
+                    }
+                    log.debug("using shared library created by another build " + dir);
+                }
+            } finally {
+                if (Files.exists(tmp)) {
+                    try (Stream<Path> s = Files.walk(tmp)) {
+                        for (Path p : s.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                            Files.delete(p);
+                        }
+                    }
+                }
+            }
+        }
+        return bundle;
+    }
+
+    String getChecksum() {
+        return checksum;
+    }
+
+    Path getDirectory() {
+        return dir;
+    }
+
+    /**
+     * Returns the value of the {@code Class-Path} manifest attribute referencing libraries of the bundle.
+     *
+     * @param prefix prefix of the location of libraries, if {@code null}, locations relative to {@code base}
+     *               are used
+     */
+    String getClassPath(String prefix, Path base) {
+        StringBuilder sb = new StringBuilder();
+        for (Path lib : libs) {
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            if (prefix == null) {
+                sb.append(base.toAbsolutePath().relativize(lib.toAbsolutePath()).toString().replace(File.separatorChar, '/'));
+            } else {
+                sb.append(prefix.endsWith("/") || prefix.isEmpty() ? prefix : prefix + '/').append(lib.getFileName());
+            }
+        }
+        log.debug("shared library class path: " + sb);
+        return sb.toString();
+    }
+
+    /**
+     * Returns a copy of the archive configuration of a module of the EAR referencing libraries of the bundle
+     * by its {@code Class-Path} manifest attribute, servers honour it in modules, not in the EAR.
+     *
+     * @see #getClassPath(String, Path)
+     */
+    MavenArchiveConfiguration moduleArchive(MavenArchiveConfiguration archive, String prefix, Path base) {
+        String cp = getClassPath(prefix, base);
+        String classPath = archive.getManifestEntries().get("Class-Path");
+        MavenArchiveConfiguration copy = Packager.copy(archive);
+        copy.addManifestEntry("Class-Path", classPath == null ? cp : classPath + " " + cp);
+        return copy;
+    }
+
+    /**
+     * Returns a copy of the archive configuration of the EAR recording the checksum of the bundle it expects.
+     */
+    MavenArchiveConfiguration earArchive(MavenArchiveConfiguration archive) {
+        MavenArchiveConfiguration copy = Packager.copy(archive);
+        copy.addManifestEntry(PackagerMojo.SHARED_LIB_ATTRIBUTE, checksum);
+        return copy;
+    }
+
+    private static String digest(String s) {
+        try {
+            StringBuilder sb = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(s.getBytes(StandardCharsets.UTF_8))) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2022 Oracle and/or its affiliates. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0,
+ * or the Eclipse Distribution License v. 1.0 which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR BSD-3-Clause
+ */
+
+package org.eclipse.persistence.build;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Weaves entity classes with the EclipseLink static weaver found among dependencies of the project.
+ * Classes and model jars are expanded to a single directory together with the persistence descriptor,
+ * the weaver processes it as one persistence archive and classes it changed are kept under
+ * the returned directory.
+ */
+final class StaticWeaver {
+
+    static final String WEAVER = "org.eclipse.persistence.tools.weaving.jpa.StaticWeaveProcessor";
+
+    private final List<String> classPath;
+    private final Path dir;
+    private final Log log;
+
+    /**
+     * @param classPath class path of the project including EclipseLink
+     * @param dir       work directory, its content is replaced
+     */
+    StaticWeaver(List<String> classPath, Path dir, Log log) {
+        this.classPath = classPath;
+        this.dir = dir;
+        this.log = log;
+    }
+
+    /**
+     * Weaves classes of the given directory and jars described by the given persistence descriptor,
+     * content is selected by the same filters as when added to the archive.
+     *
+     * @return directory with woven classes only
+     */
+    File weave(Path persistenceXml, File classes, EntryMatcher classesFilter, List<File> jars, EntryMatcher jarsFilter) throws IOException {
+        long start = System.currentTimeMillis();
+        Path in = dir.resolve("in");
+        Path out = dir.resolve("out");
+        Path woven = dir.resolve("classes");
+        delete(dir);
+        Files.createDirectories(in);
+        if (classes.isDirectory()) {
+            copy(classes.toPath(), classesFilter, in);
+        }
+        for (File jar : jars) {
+            expand(jar, jarsFilter, in);
+        }
+        Path pu = in.resolve(PackagerMojo.PERSISTENCE_DESC);
+        Files.createDirectories(pu.getParent());
+        Files.copy(persistenceXml, pu, StandardCopyOption.REPLACE_EXISTING);
+
+        List<URL> urls = new ArrayList<>();
+        urls.add(in.toUri().toURL());
+        for (String element : classPath) {
+            urls.add(new File(element).toURI().toURL());
+        }
+        StringWriter weaverLog = new StringWriter();
+        Thread thread = Thread.currentThread();
+        ClassLoader tccl = thread.getContextClassLoader();
+        try (URLClassLoader cl = new URLClassLoader(urls.toArray(new URL[0]), ClassLoader.getPlatformClassLoader())) {
+            Class<?> weaverClass;
+            try {
+                weaverClass = cl.loadClass(WEAVER);
+            } catch (ClassNotFoundException e) {
+                throw new IOException("cannot find EclipseLink static weaver among dependencies of the project", e);
+            }
+            thread.setContextClassLoader(cl);
+            Object weaver = weaverClass.getConstructor(String.class, String.class).newInstance(in.toString(), out.toString());
+            weaverClass.getMethod("setClassLoader", ClassLoader.class).invoke(weaver, cl);
+            weaverClass.getMethod("setLog", Writer.class).invoke(weaver, weaverLog);
+            weaverClass.getMethod("performWeaving").invoke(weaver);
+        } catch (InvocationTargetException e) {
+            throw new IOException("static weaving failed: " + e.getCause(), e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IOException("unsupported EclipseLink static weaver", e);
+        } finally {
+            thread.setContextClassLoader(tccl);
+            if (weaverLog.getBuffer().length() > 0) {
+                log.debug(weaverLog.toString());
+            }
+        }
+
+        int count = 0;
+        List<Path> files;
+        try (Stream<Path> s = Files.walk(out)) {
+            files = s.filter(p -> p.toString().endsWith(".class")).collect(Collectors.toList());
+        }
+        for (Path f : files) {
+            Path rel = out.relativize(f);
+            Path original = in.resolve(rel);
+            if (Files.isRegularFile(original) && Arrays.equals(Files.readAllBytes(f), Files.readAllBytes(original))) {
+                continue;
+            }
+            Path target = woven.resolve(rel);
+            Files.createDirectories(target.getParent());
+            Files.copy(f, target);
+            count++;
+        }
+        Files.createDirectories(woven);
+        log.info(String.format("Woven %d classes in %dms", count, System.currentTimeMillis() - start));
+        return woven.toFile();
+    }
+
+    // earlier content wins, as in the archive
+    private static void copy(Path source, EntryMatcher filter, Path target) throws IOException {
+        List<Path> files;
+        try (Stream<Path> s = Files.walk(source)) {
+            files = s.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+        for (Path f : files) {
+            String name = source.relativize(f).toString().replace(File.separatorChar, '/');
+            Path t = target.resolve(name);
+            if (filter.matches(name) && Files.notExists(t)) {
+                Files.createDirectories(t.getParent());
+                Files.copy(f, t);
+            }
+        }
+    }
+
+    private static void expand(File jar, EntryMatcher filter, Path target) throws IOException {
+        Path root = target.toAbsolutePath().normalize();
+        try (ZipFile zf = new ZipFile(jar)) {
+            for (Enumeration<ZipArchiveEntry> en = zf.getEntriesInPhysicalOrder(); en.hasMoreElements(); ) {
+                ZipArchiveEntry e = en.nextElement();
+                Path t = root.resolve(e.getName()).normalize();
+                if (!t.startsWith(root) || t.equals(root)) {
+                    throw new IOException("entry outside of " + target + ": " + e.getName());
+                }
+                if (e.isDirectory() || !filter.matches(e.getName()) || Files.exists(t)) {
+                    continue;
+                }
+                Files.createDirectories(t.getParent());
+                try (InputStream is = zf.getInputStream(e)) {
+                    Files.copy(is, t);
+                }
+            }
+        }
+    }
+
+    private static void delete(Path dir) throws IOException {
+        if (Files.exists(dir)) {
+            try (Stream<Path> s = Files.walk(dir)) {
+                for (Path p : s.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                    Files.delete(p);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,522 @@
+/*
+ * Copyright (c) 2022 Oracle and/or its affiliates. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0,
+ * or the Eclipse Distribution License v. 1.0 which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR BSD-3-Clause
+ */
+
+package org.eclipse.persistence.build;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * StAX based counterpart of {@code pu.xsl} and {@code ejb.xsl}, producing the same server-side descriptors
+ * in a single pass over the source {@code persistence.xml}. Only one child of the root element
+ * (a persistence unit) is held in memory at a time, as the order of its children changes.
+ */
+final class StreamingDescriptorGenerator {
+
+    private static final String JAKARTAEE_NS = "https://jakarta.ee/xml/ns/jakartaee";
+    private static final String XSI_NS = "http://www.w3.org/2001/XMLSchema-instance";
+
+    // order of persistence-unit children, the data source is inserted after the provider
+    private static final String[] PU_HEAD = {"description", "provider"};
+    private static final String[] PU_TAIL = {"mapping-file", "jar-file", "class", "exclude-unlisted-classes",
+            "shared-cache-mode", "validation-mode", "properties"};
+
+    private StreamingDescriptorGenerator() {
+    }
+
+    /**
+     * Writes server-side {@code persistence.xml} created from the given source, see {@code pu.xsl}.
+     */
+    static void persistence(InputStream source, Writer dest, Map<String, Object> options) throws XMLStreamException {
+        XMLStreamReader r = createInputFactory().createXMLStreamReader(source);
+        try {
+            Output out = new Output(XMLOutputFactory.newInstance().createXMLStreamWriter(dest));
+            out.startDocument(param(options, "generator.id", "UNDEFINED"));
+            PersistenceUnitWriter pw = new PersistenceUnitWriter(out, options);
+            while (r.hasNext()) {
+                int event = r.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String name = r.getLocalName();
+                    if ("persistence-unit".equals(name) || "properties".equals(name)) {
+                        pw.write(Node.read(r));
+                    } else {
+                        // stream the root, buffer its children one by one
+                        pw.start(Node.startOf(r));
+                        readChildren(r, pw, out);
+                    }
+                } else if (event == XMLStreamConstants.PROCESSING_INSTRUCTION) {
+                    out.pi(r.getPITarget(), r.getPIData());
+                }
+            }
+            out.endDocument();
+        } finally {
+            r.close();
+        }
+    }
+
+    private static void readChildren(XMLStreamReader r, PersistenceUnitWriter pw, Output out) throws XMLStreamException {
+        while (r.hasNext()) {
+            switch (r.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    pw.write(Node.read(r));
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    out.end();
+                    return;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                    if (!r.isWhiteSpace()) {
+                        out.text(r.getText());
+                    }
+                    break;
+                case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                    out.pi(r.getPITarget(), r.getPIData());
+                    break;
+                default:
+                    // comments are stripped off
+            }
+        }
+    }
+
+    /**
+     * Writes {@code ejb-jar.xml} declaring test runners referencing all persistence units
+     * defined in the given source, see {@code ejb.xsl}.
+     */
+    static void ejb(InputStream source, Writer dest, Map<String, Object> options) throws XMLStreamException {
+        List<String> units = new ArrayList<>();
+        Set<String> paths = new HashSet<>();
+        XMLStreamReader r = createInputFactory().createXMLStreamReader(source);
+        try {
+            boolean persistence = false;
+            int depth = 0;
+            while (r.hasNext()) {
+                int event = r.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                    if (depth == 1) {
+                        persistence = "persistence".equals(r.getLocalName());
+                    }
+                    String name = r.getAttributeValue(null, "name");
+                    if (persistence && depth == 2 && name != null && "persistence-unit".equals(r.getLocalName())) {
+                        units.add(name);
+                    }
+                    String path = r.getAttributeValue(null, "path");
+                    if (path != null) {
+                        paths.add(path);
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    depth--;
+                }
+            }
+        } finally {
+            r.close();
+        }
+
+        Output out = new Output(XMLOutputFactory.newInstance().createXMLStreamWriter(dest));
+        out.startDocument(param(options, "generator.id", "UNDEFINED"));
+        out.start("", "ejb-jar", JAKARTAEE_NS);
+        out.attribute("", "", "version", "4.0");
+        out.attribute("xsi", XSI_NS, "schemaLocation", JAKARTAEE_NS + " https://jakarta.ee/xml/ns/jakartaee/ejb-jar_4_0.xsd");
+        out.namespace("xsi", XSI_NS);
+        out.namespace("", JAKARTAEE_NS);
+        out.start("", "enterprise-beans", JAKARTAEE_NS);
+        String separator = param(options, "separator", " ");
+        String text = normalize(param(options, "testRunners", ""));
+        String runnerTests = separator + normalize(param(options, "runnerTests", "")) + separator;
+        while (!text.isEmpty()) {
+            int idx = text.indexOf(separator);
+            String runner = normalize(idx < 0 ? text : text.substring(0, idx));
+            if (!paths.contains(runner)) {
+                out.start("", "session", JAKARTAEE_NS);
+                out.element("ejb-name", JAKARTAEE_NS, runner);
+                int testsIdx = runnerTests.indexOf(separator + runner + ':');
+                if (testsIdx >= 0) {
+                    int start = testsIdx + separator.length() + runner.length() + 1;
+                    String tests = runnerTests.substring(start, runnerTests.indexOf(separator, start));
+                    if (!tests.isEmpty()) {
+                        out.start("", "env-entry", JAKARTAEE_NS);
+                        out.element("env-entry-name", JAKARTAEE_NS, "tests");
+                        out.element("env-entry-type", JAKARTAEE_NS, String.class.getName());
+                        out.element("env-entry-value", JAKARTAEE_NS, tests);
+                        out.end();
+                    }
+                }
+                for (String unit : units) {
+                    ref(out, unit, "context", "entity-manager");
+                }
+                for (String unit : units) {
+                    ref(out, unit, "unit", "factory");
+                }
+                out.end();
+            }
+            text = idx < 0 ? "" : normalize(text.substring(idx + separator.length()));
+        }
+        out.end();
+        out.end();
+        out.endDocument();
+    }
+
+    private static void ref(Output out, String unit, String refType, String type) throws XMLStreamException {
+        String elName = "persistence-" + refType + "-ref";
+        out.start("", elName, JAKARTAEE_NS);
+        out.element(elName + "-name", JAKARTAEE_NS, "persistence/" + normalize(unit) + "/" + type);
+        out.element("persistence-unit-name", JAKARTAEE_NS, unit);
+        out.end();
+    }
+
+    private static String param(Map<String, Object> options, String name, String defaultValue) {
+        return options.containsKey(name) ? Objects.toString(options.get(name), "") : defaultValue;
+    }
+
+    // XPath normalize-space()
+    private static String normalize(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (String token : s.split("[ \t\r\n]+")) {
+            if (!token.isEmpty()) {
+                if (sb.length() > 0) {
+                    sb.append(' ');
+                }
+                sb.append(token);
+            }
+        }
+        return sb.toString();
+    }
+
+    // factories of the JDK are not thread-safe
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory f = XMLInputFactory.newInstance();
+        f.setProperty(XMLInputFactory.IS_COALESCING, true);
+        f.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        f.setProperty(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+        return f;
+    }
+
+    /**
+     * Applies {@code pu.xsl} templates to buffered elements.
+     */
+    private static final class PersistenceUnitWriter {
+
+        private final Output out;
+        private final Map<String, Object> options;
+
+        PersistenceUnitWriter(Output out, Map<String, Object> options) {
+            this.out = out;
+            this.options = options;
+        }
+
+        void start(Node n) throws XMLStreamException {
+            out.start(n.prefix, n.localName, n.namespace);
+            for (String[] ns : n.namespaces) {
+                out.namespace(ns[0], ns[1]);
+            }
+            for (String[] a : n.attributes) {
+                // missing => default/none, RESOURCE_LOCAL => JTA
+                boolean txType = a[1].isEmpty() && "transaction-type".equals(a[2]);
+                out.attribute(a[0], a[1], a[2], txType ? "JTA" : a[3]);
+            }
+        }
+
+        void write(Node n) throws XMLStreamException {
+            if ("persistence-unit".equals(n.localName)) {
+                start(n);
+                children(n, PU_HEAD);
+                String dsType = param(options, "data-source-type", "");
+                // the serializer used by XSLT does not declare the namespace of this element,
+                // so it ends up in the default namespace in scope
+                out.start("", dsType, out.defaultNamespace());
+                String dsName = param(options, "data-source-name", "");
+                if (!dsName.isEmpty()) {
+                    out.text(dsName);
+                }
+                out.end();
+                children(n, PU_TAIL);
+                out.end();
+            } else if ("properties".equals(n.localName)) {
+                out.start(n.prefix, n.localName, n.namespace);
+                for (String[] ns : n.namespaces) {
+                    out.namespace(ns[0], ns[1]);
+                }
+                defaultProperty(n, "eclipselink.target-database", "db.platform");
+                defaultProperty(n, "eclipselink.target-server", "server.platform");
+                defaultProperty(n, "eclipselink.weaving", "server.weaving");
+                for (Object child : n.children) {
+                    if (child instanceof Node && "property".equals(((Node) child).localName)) {
+                        write((Node) child);
+                    }
+                }
+                out.end();
+            } else {
+                start(n);
+                for (Object child : n.children) {
+                    if (child instanceof Node) {
+                        write((Node) child);
+                    } else if (child instanceof String[]) {
+                        String[] pi = (String[]) child;
+                        out.pi(pi[0], pi[1]);
+                    } else {
+                        out.text((String) child);
+                    }
+                }
+                out.end();
+            }
+        }
+
+        private void children(Node n, String[] names) throws XMLStreamException {
+            for (String name : names) {
+                for (Object child : n.children) {
+                    if (child instanceof Node && name.equals(((Node) child).localName)) {
+                        write((Node) child);
+                    }
+                }
+            }
+        }
+
+        private void defaultProperty(Node properties, String name, String param) throws XMLStreamException {
+            for (Object child : properties.children) {
+                if (child instanceof Node && "property".equals(((Node) child).localName)
+                        && name.equals(((Node) child).attribute("name"))) {
+                    return;
+                }
+            }
+            String ns = properties.namespace;
+            out.start("", "property", ns);
+            if (!ns.equals(out.defaultNamespace())) {
+                out.namespace("", ns);
+            }
+            out.attribute("", "", "name", name);
+            out.attribute("", "", "value", param(options, param, ""));
+            out.end();
+        }
+    }
+
+    /**
+     * Buffered element, comments and whitespace only text are left out.
+     */
+    private static final class Node {
+
+        private final String prefix, localName, namespace;
+        private final List<String[]> namespaces = new ArrayList<>();
+        private final List<String[]> attributes = new ArrayList<>();
+        // nested nodes, text or processing instructions (target, data)
+        private final List<Object> children = new ArrayList<>();
+
+        private Node(String prefix, String localName, String namespace) {
+            this.prefix = prefix == null ? "" : prefix;
+            this.localName = localName;
+            this.namespace = namespace == null ? "" : namespace;
+        }
+
+        String attribute(String name) {
+            for (String[] a : attributes) {
+                if (a[1].isEmpty() && name.equals(a[2])) {
+                    return a[3];
+                }
+            }
+            return null;
+        }
+
+        static Node startOf(XMLStreamReader r) {
+            Node n = new Node(r.getPrefix(), r.getLocalName(), r.getNamespaceURI());
+            for (int i = 0; i < r.getNamespaceCount(); i++) {
+                String p = r.getNamespacePrefix(i);
+                n.namespaces.add(new String[]{p == null ? "" : p, r.getNamespaceURI(i)});
+            }
+            for (int i = 0; i < r.getAttributeCount(); i++) {
+                String p = r.getAttributePrefix(i);
+                String ns = r.getAttributeNamespace(i);
+                n.attributes.add(new String[]{p == null ? "" : p, ns == null ? "" : ns,
+                        r.getAttributeLocalName(i), r.getAttributeValue(i)});
+            }
+            return n;
+        }
+
+        static Node read(XMLStreamReader r) throws XMLStreamException {
+            Node n = startOf(r);
+            while (r.hasNext()) {
+                switch (r.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        n.children.add(read(r));
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        return n;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                        if (!r.isWhiteSpace()) {
+                            n.children.add(r.getText());
+                        }
+                        break;
+                    case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                        n.children.add(new String[]{r.getPITarget(), r.getPIData()});
+                        break;
+                    default:
+                        // comments are stripped off
+                }
+            }
+            return n;
+        }
+    }
+
+    /**
+     * Indents the output the same way as the serializer used by XSLT with {@code indent-amount="4"}
+     * and writes elements without content as empty elements.
+     */
+    private static final class Output {
+
+        private static final String INDENT = "    ";
+
+        private final XMLStreamWriter w;
+        // in-scope default namespace of open elements
+        private final Deque<String> defaults = new ArrayDeque<>();
+        // start tag to be written once it is known whether the element is empty
+        private String[] pending;
+        private final List<String[]> pendingItems = new ArrayList<>();
+        private boolean prevText;
+
+        Output(XMLStreamWriter w) {
+            this.w = w;
+        }
+
+        void startDocument(String generatorId) throws XMLStreamException {
+            w.writeStartDocument("UTF-8", "1.0");
+            w.writeCharacters("\n");
+            w.writeComment("This file was generated by " + generatorId + ".");
+            w.writeCharacters("\n");
+            prevText = true;
+        }
+
+        void endDocument() throws XMLStreamException {
+            flush(false);
+            w.writeCharacters("\n");
+            w.writeEndDocument();
+            w.flush();
+        }
+
+        int depth() {
+            return defaults.size();
+        }
+
+        String defaultNamespace() {
+            return defaults.isEmpty() ? "" : defaults.peek();
+        }
+
+        void start(String prefix, String localName, String namespace) throws XMLStreamException {
+            flush(false);
+            if (depth() > 0 && !prevText) {
+                indent(depth());
+            }
+            pending = new String[]{prefix, localName, namespace};
+            defaults.push(defaultNamespace());
+            prevText = false;
+        }
+
+        void namespace(String prefix, String uri) {
+            if (prefix.isEmpty()) {
+                defaults.pop();
+                defaults.push(uri);
+            }
+            pendingItems.add(new String[]{null, prefix, uri});
+        }
+
+        void attribute(String prefix, String namespace, String localName, String value) {
+            pendingItems.add(new String[]{prefix, namespace, localName, value});
+        }
+
+        void element(String localName, String namespace, String text) throws XMLStreamException {
+            start("", localName, namespace);
+            if (!text.isEmpty()) {
+                text(text);
+            }
+            end();
+        }
+
+        void text(String text) throws XMLStreamException {
+            flush(false);
+            w.writeCharacters(text);
+            prevText = true;
+        }
+
+        void pi(String target, String data) throws XMLStreamException {
+            flush(false);
+            if (depth() > 0 && !prevText) {
+                indent(depth());
+            }
+            if (data == null || data.isEmpty()) {
+                w.writeProcessingInstruction(target);
+            } else {
+                w.writeProcessingInstruction(target, data);
+            }
+            prevText = false;
+        }
+
+        void end() throws XMLStreamException {
+            defaults.pop();
+            if (pending != null) {
+                flush(true);
+            } else {
+                if (!prevText) {
+                    indent(depth());
+                }
+                w.writeEndElement();
+            }
+            prevText = false;
+        }
+
+        private void flush(boolean empty) throws XMLStreamException {
+            if (pending == null) {
+                return;
+            }
+            if (empty) {
+                w.writeEmptyElement(pending[0], pending[1], pending[2]);
+            } else {
+                w.writeStartElement(pending[0], pending[1], pending[2]);
+            }
+            for (String[] item : pendingItems) {
+                if (item[0] == null) {
+                    if (item[1].isEmpty()) {
+                        w.writeDefaultNamespace(item[2]);
+                    } else {
+                        w.writeNamespace(item[1], item[2]);
+                    }
+                } else if (item[1].isEmpty()) {
+                    w.writeAttribute(item[2], item[3]);
+                } else {
+                    w.writeAttribute(item[0], item[1], item[2], item[3]);
+                }
+            }
+            pending = null;
+            pendingItems.clear();
+        }
+
+        private void indent(int depth) throws XMLStreamException {
+            StringBuilder sb = new StringBuilder(1 + depth * INDENT.length()).append('\n');
+            for (int i = 0; i < depth; i++) {
+                sb.append(INDENT);
+            }
+            w.writeCharacters(sb.toString());
+        }
+    }
+}
@@ -15,30 +15,147 @@ package org.eclipse.persistence.build;
 import org.apache.maven.AbstractMavenLifecycleParticipant;
 import org.apache.maven.MavenExecutionException;
 import org.apache.maven.execution.MavenSession;
+import org.apache.maven.project.MavenProject;
 import org.codehaus.plexus.component.annotations.Component;
 import org.codehaus.plexus.component.annotations.Requirement;
 import org.codehaus.plexus.logging.Logger;
 
-//@Component(role = AbstractMavenLifecycleParticipant.class, hint = "jar")
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Collects packaging metrics of all modules of the reactor and writes them as a single report,
+ * {@code eclipselink-packager-report.txt} and {@code .json}, to the build directory of the top level project
+ * at the end of the session. Active only when the plugin is declared with {@code <extensions>true</extensions>}.
+ */
+@Component(role = AbstractMavenLifecycleParticipant.class, hint = "eclipselink-testear")
 public class TestEar extends AbstractMavenLifecycleParticipant {
+
+    static final String REPORT = "eclipselink-packager-report";
+
+    // modules listed in the summary logged at the end of the build
+    private static final int SLOWEST = 3;
+
     @Requirement
     private Logger logger;
 
     @Override
-    public void afterProjectsRead(MavenSession session) throws MavenExecutionException {
-        logger.info("");
-        logger.info("----------------------------{ eclipselink-testear afterProjectsRead }-----------------------------");
+    @SuppressWarnings("unchecked")
+    public void afterSessionEnd(MavenSession session) throws MavenExecutionException {
+        Collection<Map<String, Object>> published = PackagerMetrics.getModules(session.getRepositorySession());
+        if (published.isEmpty()) {
+            return;
+        }
+        List<Map<String, Object>> modules = new ArrayList<>(published);
+        modules.sort((m1, m2) -> Long.compare(number(m2.get("millis")), number(m1.get("millis"))));
+
+        long total = 0;
+        int upToDate = 0;
+        Map<String, long[]> caches = new TreeMap<>();
+        Map<String, Long> contributors = new HashMap<>();
+        for (Map<String, Object> module : modules) {
+            total += number(module.get("millis"));
+            if (Boolean.TRUE.equals(module.get("upToDate"))) {
+                upToDate++;
+            }
+            ((Map<String, Map<String, Object>>) module.get("caches")).forEach((name, cache) -> {
+                long[] counts = caches.computeIfAbsent(name, n -> new long[2]);
+                counts[0] += number(cache.get("hits"));
+                counts[1] += number(cache.get("misses"));
+            });
+            for (Object archive : ((Map<String, Object>) module.get("archives")).values()) {
+                ((Map<String, Object>) ((Map<String, Object>) archive).get("contributors"))
+                        .forEach((source, bytes) -> contributors.merge(source, number(bytes), Long::sum));
+            }
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("modules", modules.size());
+        report.put("upToDate", upToDate);
+        report.put("millis", total);
+        Map<String, Object> cacheReport = new LinkedHashMap<>();
+        caches.forEach((name, counts) -> {
+            Map<String, Object> cache = new LinkedHashMap<>();
+            cache.put("hits", counts[0]);
+            cache.put("misses", counts[1]);
+            cache.put("hitRate", rate(counts));
+            cacheReport.put(name, cache);
+        });
+        report.put("caches", cacheReport);
+        Map<String, Object> biggest = new LinkedHashMap<>();
+        contributors.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .limit(PackagerMetrics.MAX_CONTRIBUTORS)
+                .forEach(e -> biggest.put(e.getKey(), e.getValue()));
+        report.put("contributors", biggest);
+        report.put("packaged", modules);
+
+        StringBuilder txt = new StringBuilder();
+        txt.append(String.format("Packaged %d modules (%d up-to-date) in %dms%n", modules.size(), upToDate, total));
+        txt.append(String.format("%nModules, slowest first:%n"));
+        for (Map<String, Object> module : modules) {
+            txt.append(String.format("  %-40s %8dms %6dMB heap (+%dMB)%s%s%n", module.get("module"), number(module.get("millis")),
+                    number(module.get("peakHeap")) / (1024 * 1024), number(module.get("heapGrowth")) / (1024 * 1024),
+                    Boolean.TRUE.equals(module.get("upToDate")) ? "  up-to-date" : "", slowestStage(module)));
+            ((Map<String, Object>) module.get("archives")).forEach((name, archive) ->
+                    txt.append(String.format("    %-38s %10d bytes%n", name, number(((Map<String, Object>) archive).get("bytes")))));
+        }
+        txt.append(String.format("%nCaches:%n"));
+        caches.forEach((name, counts) -> txt.append(String.format("  %-40s %5.1f%% of %d%n", name, rate(counts) * 100, counts[0] + counts[1])));
+        txt.append(String.format("%nBiggest contributors to archive size:%n"));
+        biggest.forEach((source, bytes) -> txt.append(String.format("  %-60s %10d bytes%n", source, number(bytes))));
+
+        Path dir = reportDirectory(session);
+        try {
+            Files.createDirectories(dir);
+            Files.writeString(dir.resolve(REPORT + ".json"), PackagerMetrics.toJson(report) + '\n', StandardCharsets.UTF_8);
+            Files.writeString(dir.resolve(REPORT + ".txt"), txt.toString(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            logger.warn("Cannot write packaging report: " + e.getMessage());
+            return;
+        }
+        logger.info(String.format("Packaged %d modules (%d up-to-date) in %dms, report: %s",
+                modules.size(), upToDate, total, dir.resolve(REPORT + ".txt")));
+        for (Map<String, Object> module : modules.subList(0, Math.min(SLOWEST, modules.size()))) {
+            logger.info(String.format("  %s: %dms%s", module.get("module"), number(module.get("millis")), slowestStage(module)));
+        }
     }
 
-    @Override
-    public void afterSessionStart(MavenSession session) throws MavenExecutionException {
-        logger.info("");
-        logger.info("----------------------------{ eclipselink-testear afterSessionStart }-----------------------------");
+    private static Path reportDirectory(MavenSession session) {
+        MavenProject top = session.getTopLevelProject();
+        return top != null
+                ? Paths.get(top.getBuild().getDirectory())
+                : Paths.get(session.getExecutionRootDirectory(), "target");
     }
 
-    @Override
-    public void afterSessionEnd(MavenSession session) throws MavenExecutionException {
-        logger.info("");
-        logger.info("----------------------------{ eclipselink-testear afterSessionEnd }-----------------------------");
+    @SuppressWarnings("unchecked")
+    private static String slowestStage(Map<String, Object> module) {
+        Map<String, Object> slowest = null;
+        for (Object o : (List<Object>) module.get("stages")) {
+            Map<String, Object> stage = (Map<String, Object>) o;
+            if (stage.containsKey("millis") && (slowest == null || number(stage.get("millis")) > number(slowest.get("millis")))) {
+                slowest = stage;
+            }
+        }
+        return slowest != null ? String.format(", slowest %s %dms", slowest.get("name"), number(slowest.get("millis"))) : "";
+    }
+
+    private static double rate(long[] counts) {
+        long lookups = counts[0] + counts[1];
+        return lookups > 0 ? (double) counts[0] / lookups : 0;
+    }
+
+    private static long number(Object value) {
+        return value instanceof Number ? ((Number) value).longValue() : 0;
     }
 }
@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) 2022 Oracle and/or its affiliates. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0,
+ * or the Eclipse Distribution License v. 1.0 which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR BSD-3-Clause
+ */
+
+package org.eclipse.persistence.build;
+
+import org.apache.maven.plugin.logging.Log;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Assigns test classes to numbered test runners, so that all runners take about the same time
+ * in the server. Durations of test classes come from surefire or failsafe reports of earlier runs,
+ * test classes are assigned longest first, each to the runner with the lowest total so far.
+ */
+final class TestShards {
+
+    /**
+     * Mapping of test classes to runners written with the generated descriptors.
+     */
+    static final Path MAPPING = Path.of("META-INF", "test-shards.properties");
+
+    // default includes of surefire and failsafe
+    private static final EntryMatcher TESTS = EntryMatcher.of(new String[] {
+            "**/Test*.class", "**/*Test.class", "**/*Tests.class", "**/*TestCase.class",
+            "**/IT*.class", "**/*IT.class", "**/*ITCase.class"}, new String[] {"**/*$*"});
+
+    private final Log log;
+    // seconds, keyed by class names
+    private final Map<String, Double> durations = new HashMap<>();
+
+    TestShards(Log log) {
+        this.log = log;
+    }
+
+    /**
+     * Reads durations of test classes from {@code TEST-*.xml} reports found in the given directory,
+     * from the given report, or from the given properties file of class names and seconds.
+     * The longest duration of a class read wins.
+     */
+    void readHistory(File location) throws IOException {
+        Path path = location.toPath();
+        if (Files.isDirectory(path)) {
+            List<Path> reports;
+            try (Stream<Path> s = Files.list(path)) {
+                reports = s.filter(p -> {
+                    String name = p.getFileName().toString();
+                    return name.startsWith("TEST-") && name.endsWith(".xml");
+                }).sorted().collect(Collectors.toList());
+            }
+            for (Path report : reports) {
+                readReport(report);
+            }
+        } else if (Files.isRegularFile(path)) {
+            if (path.getFileName().toString().endsWith(".xml")) {
+                readReport(path);
+            } else {
+                Properties props = new Properties();
+                try (Reader r = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                    props.load(r);
+                }
+                for (String name : props.stringPropertyNames()) {
+                    try {
+                        put(name, Double.parseDouble(props.getProperty(name).trim()));
+                    } catch (NumberFormatException e) {
+                        log.warn(String.format("Invalid duration of %s in %s: %s", name, path, props.getProperty(name)));
+                    }
+                }
+            }
+        } else {
+            log.debug("missing test duration history: " + path);
+        }
+    }
+
+    /**
+     * @return whether durations of any test class were read
+     */
+    boolean hasHistory() {
+        return !durations.isEmpty();
+    }
+
+    /**
+     * Assigns given test classes to given runners.
+     *
+     * @return test classes keyed by runners, in the order of runners
+     */
+    Map<String, List<String>> assign(List<String> runners, Collection<String> tests) {
+        // classes without history take the average time of the others
+        double known = 0;
+        int knownCount = 0;
+        for (String test : tests) {
+            Double d = durations.get(test);
+            if (d != null) {
+                known += d;
+                knownCount++;
+            }
+        }
+        double average = knownCount > 0 ? known / knownCount : 1;
+        Map<String, Double> estimated = new HashMap<>();
+        for (String test : tests) {
+            estimated.put(test, durations.getOrDefault(test, average));
+        }
+        List<String> sorted = new ArrayList<>(new TreeSet<>(tests));
+        sorted.sort(Comparator.comparing((String t) -> estimated.get(t)).reversed());
+
+        Map<String, List<String>> result = new LinkedHashMap<>();
+        double[] totals = new double[runners.size()];
+        for (String runner : runners) {
+            result.put(runner, new ArrayList<>());
+        }
+        for (String test : sorted) {
+            int lowest = 0;
+            for (int i = 1; i < totals.length; i++) {
+                if (totals[i] < totals[lowest]) {
+                    lowest = i;
+                }
+            }
+            totals[lowest] += estimated.get(test);
+            result.get(runners.get(lowest)).add(test);
+        }
+        double total = 0, longest = 0;
+        for (int i = 0; i < totals.length; i++) {
+            total += totals[i];
+            longest = Math.max(longest, totals[i]);
+            log.debug(String.format("%s: %d test classes, %.1fs", runners.get(i), result.get(runners.get(i)).size(), totals[i]));
+        }
+        log.info(String.format("Assigned %d test classes (%d without history) to %d runners, longest runner takes %.1fs of %.1fs",
+                sorted.size(), sorted.size() - knownCount, runners.size(), longest, total));
+        return result;
+    }
+
+    /**
+     * Returns names of numbered test runners, ie {@code TestRunner1}, among given space separated runners,
+     * in the order of their numbers.
+     */
+    static List<String> numberedRunners(String runners) {
+        List<String> result = new ArrayList<>();
+        for (String runner : runners.trim().split("\\s+")) {
+            if (runner.matches("TestRunner\\d+")) {
+                result.add(runner);
+            }
+        }
+        result.sort(Comparator.comparingInt(r -> Integer.parseInt(r.substring("TestRunner".length()))));
+        return result;
+    }
+
+    /**
+     * Returns names of test classes found in given directories and jars by default includes of surefire.
+     */
+    static Set<String> testClasses(List<File> roots) throws IOException {
+        Set<String> result = new TreeSet<>();
+        for (File root : roots) {
+            List<String> names;
+            if (root.isDirectory()) {
+                try (Stream<Path> s = Files.walk(root.toPath())) {
+                    names = s.filter(Files::isRegularFile)
+                            .map(p -> root.toPath().relativize(p).toString().replace(File.separatorChar, '/'))
+                            .collect(Collectors.toList());
+                }
+            } else if (root.isFile()) {
+                names = RunnerIndex.entryNames(root.toPath());
+            } else {
+                continue;
+            }
+            for (String name : names) {
+                if (TESTS.matches(name)) {
+                    result.add(name.substring(0, name.length() - 6).replace('/', '.'));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the value of the {@code runnerTests} option of descriptor generators: {@code runner:class,class}
+     * items delimited by the separator.
+     */
+    static String format(Map<String, List<String>> shards, String separator) {
+        return shards.entrySet().stream()
+                .map(e -> e.getKey() + ':' + String.join(",", e.getValue()))
+                .collect(Collectors.joining(separator));
+    }
+
+    /**
+     * Writes the mapping of test classes to runners as a properties file.
+     */
+    static void store(Path file, Map<String, List<String>> shards) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, List<String>> e : shards.entrySet()) {
+            for (String test : e.getValue()) {
+                sb.append(test).append('=').append(e.getKey()).append('\n');
+            }
+        }
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, sb.toString(), StandardCharsets.UTF_8);
+    }
+
+    private void readReport(Path report) throws IOException {
+        XMLInputFactory f = XMLInputFactory.newInstance();
+        f.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        f.setProperty(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+        try (InputStream is = Files.newInputStream(report)) {
+            XMLStreamReader r = f.createXMLStreamReader(is);
+            try {
+                // only the root element is needed
+                while (r.hasNext()) {
+                    if (r.next() == XMLStreamConstants.START_ELEMENT) {
+                        String name = r.getAttributeValue(null, "name");
+                        String time = r.getAttributeValue(null, "time");
+                        if ("testsuite".equals(r.getLocalName()) && name != null && time != null) {
+                            // surefire groups digits
+                            put(name, Double.parseDouble(time.replace(",", "")));
+                        }
+                        break;
+                    }
+                }
+            } finally {
+                r.close();
+            }
+        } catch (XMLStreamException | NumberFormatException e) {
+            log.warn(String.format("Cannot read test durations from %s: %s", report, e.getMessage()));
+        }
+    }
+
+    private void put(String test, double seconds) {
+        durations.merge(test, seconds, Math::max);
+    }
+}
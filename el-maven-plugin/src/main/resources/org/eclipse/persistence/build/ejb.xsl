@@ -21,6 +21,8 @@
     <xsl:param name="separator" select="' '"/>
     <!-- '$separator' delimited lists -->
     <xsl:param name="testRunners" select="''"/>
+    <!-- 'runner:class,class' items -->
+    <xsl:param name="runnerTests" select="''"/>
     <xsl:param name="generator.id" select="'UNDEFINED'"/>
 
     <xsl:variable name="persistenceUnits" select="*[local-name() = 'persistence']/*[@name]"/>
@@ -43,8 +45,17 @@
     <xsl:template name="runner">
         <xsl:param name="runnerName"/>
         <xsl:param name="pus"/>
+        <xsl:variable name="tests"
+                      select="substring-before(substring-after(concat($separator, normalize-space($runnerTests), $separator), concat($separator, normalize-space($runnerName), ':')), $separator)"/>
         <session>
             <ejb-name><xsl:value-of select="normalize-space($runnerName)"/></ejb-name>
+            <xsl:if test="$tests != ''">
+                <env-entry>
+                    <env-entry-name>tests</env-entry-name>
+                    <env-entry-type>java.lang.String</env-entry-type>
+                    <env-entry-value><xsl:value-of select="$tests"/></env-entry-value>
+                </env-entry>
+            </xsl:if>
             <xsl:apply-templates select="$pus" mode="ctx"/>
             <xsl:apply-templates select="$pus" mode="unit"/>
         </session>
@@ -0,0 +1,323 @@
+/*
+ * Copyright (c) 2022 Oracle and/or its affiliates. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0,
+ * or the Eclipse Distribution License v. 1.0 which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR BSD-3-Clause
+ */
+
+package org.eclipse.persistence.build;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.jar.JarInputStream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that archives written by {@link ArchiveWriter} do not depend on the number of threads nor on
+ * modification times of sources with a timestamp set, that the manifest goes first and that the first
+ * of duplicate entries wins.
+ */
+class ArchiveWriterTest {
+
+    private static final Date TIMESTAMP = new Date(1640995200000L);
+
+    @TempDir
+    Path dir;
+
+    private Path classes;
+    private Path jar;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Random random = new Random(42);
+        classes = dir.resolve("classes");
+        for (int i = 0; i < 40; i++) {
+            write(classes.resolve("app/p" + i % 4 + "/C" + i + ".class"), content(random, 100 + i * 37));
+        }
+        write(classes.resolve("META-INF/persistence.xml"), "<persistence/>".getBytes(StandardCharsets.UTF_8));
+        jar = dir.resolve("fwk.jar");
+        try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(jar))) {
+            for (int i = 0; i < 40; i++) {
+                zos.putNextEntry(new ZipEntry("fwk/F" + i + ".class"));
+                zos.write(content(random, 200 + i * 11));
+                zos.closeEntry();
+            }
+            zos.putNextEntry(new ZipEntry(ArchiveWriter.MANIFEST));
+            zos.write("Manifest-Version: 1.0\r\nMain-Class: fwk.F0\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+            zos.closeEntry();
+        }
+    }
+
+    @Test
+    void sameContentForAnyNumberOfThreads() throws IOException {
+        byte[] single = write(1);
+        assertArrayEquals(single, write(4));
+        assertArrayEquals(single, write(16));
+    }
+
+    @Test
+    void manifestFirst() throws IOException {
+        List<String> names = new ArrayList<>();
+        try (ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(write(4)))) {
+            for (ZipEntry e; (e = zis.getNextEntry()) != null; ) {
+                names.add(e.getName());
+            }
+        }
+        assertEquals("META-INF/", names.get(0));
+        assertEquals(ArchiveWriter.MANIFEST, names.get(1));
+        List<String> rest = new ArrayList<>(names.subList(2, names.size()));
+        List<String> sorted = new ArrayList<>(rest);
+        sorted.sort(null);
+        assertEquals(sorted, rest, "entries in the order of their names");
+        assertTrue(names.contains("app/") && names.contains("app/p0/"), "parent directories added");
+        try (JarInputStream jis = new JarInputStream(new ByteArrayInputStream(write(4)))) {
+            assertNotNull(jis.getManifest());
+            // the manifest of expanded archives is replaced by the one of the archive
+            assertEquals(null, jis.getManifest().getMainAttributes().getValue("Main-Class"));
+        }
+    }
+
+    @Test
+    void reproducibleTimestamps() throws IOException {
+        byte[] first = write(2);
+        for (Path f : List.of(classes.resolve("app/p0/C0.class"), classes.resolve("META-INF/persistence.xml"))) {
+            Files.setLastModifiedTime(f, FileTime.fromMillis(System.currentTimeMillis() + 60000));
+        }
+        assertArrayEquals(first, write(2));
+        Path archive = Files.write(dir.resolve("app.jar"), first);
+        try (ZipFile zf = new ZipFile(archive.toFile())) {
+            long time = zf.getEntry(ArchiveWriter.MANIFEST).getTime();
+            zf.stream().forEach(e -> assertEquals(time, e.getTime(), e.getName()));
+        }
+    }
+
+    @Test
+    void firstOfDuplicatesWins() throws IOException {
+        Path other = dir.resolve("other");
+        // the same content again is a duplicate, different content is a conflict
+        write(other.resolve("app/p0/C0.class"), Files.readAllBytes(classes.resolve("app/p0/C0.class")));
+        write(other.resolve("app/p0/C4.class"), "changed".getBytes(StandardCharsets.UTF_8));
+        ArchiveWriter writer = writer(1);
+        writer.addDirectory(other.toFile(), EntryMatcher.ALL);
+        writer.addContent("app/p0/C8.class", "generated".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(3, writer.getDuplicateEntries());
+        List<String> conflicts = writer.getConflicts();
+        assertEquals(2, conflicts.size(), conflicts.toString());
+        assertTrue(conflicts.get(0).startsWith("app/p0/C4.class"), conflicts.get(0));
+        assertTrue(conflicts.get(1).startsWith("app/p0/C8.class"), conflicts.get(1));
+
+        Path archive = dir.resolve("app.jar");
+        writer.write(archive.toFile());
+        try (ZipFile zf = new ZipFile(archive.toFile())) {
+            assertArrayEquals(Files.readAllBytes(classes.resolve("app/p0/C4.class")), read(zf, "app/p0/C4.class"));
+            assertArrayEquals(Files.readAllBytes(classes.resolve("app/p0/C8.class")), read(zf, "app/p0/C8.class"));
+        }
+    }
+
+    @Test
+    void conflictOfSameSizeDetectedByCrc() throws IOException {
+        byte[] original = Files.readAllBytes(classes.resolve("app/p1/C1.class"));
+        byte[] changed = original.clone();
+        changed[changed.length - 1]++;
+        ArchiveWriter writer = writer(1);
+        writer.addContent("app/p1/C1.class", changed);
+        assertEquals(1, writer.getConflicts().size());
+        writer.close();
+    }
+
+    @Test
+    void archivedEntriesKeepTheirContent() throws IOException {
+        Path archive = dir.resolve("app.jar");
+        writer(4).write(archive.toFile());
+        try (ZipFile source = new ZipFile(jar.toFile()); ZipFile zf = new ZipFile(archive.toFile())) {
+            source.stream().filter(e -> !ArchiveWriter.MANIFEST.equals(e.getName())).forEach(e -> {
+                ZipEntry written = zf.getEntry(e.getName());
+                assertEquals(e.getSize(), written.getSize(), e.getName());
+                assertEquals(e.getCrc(), written.getCrc(), e.getName());
+            });
+            CRC32 crc = new CRC32();
+            crc.update(read(zf, "fwk/F3.class"));
+            assertEquals(source.getEntry("fwk/F3.class").getCrc(), crc.getValue());
+        }
+    }
+
+    @Test
+    void storedEntriesOfExpandedArchives() throws IOException {
+        Path expanded = dir.resolve("model.jar");
+        byte[] nested = content(new Random(7), 4000);
+        byte[] text = "stored text".getBytes(StandardCharsets.UTF_8);
+        try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(expanded))) {
+            // deflated in the source, stored by the pattern
+            zos.putNextEntry(new ZipEntry("lib/nested.jar"));
+            zos.write(nested);
+            zos.closeEntry();
+            // stored in the source, deflated by the default level
+            ZipEntry stored = new ZipEntry("b.txt");
+            stored.setMethod(ZipEntry.STORED);
+            stored.setSize(text.length);
+            CRC32 crc = new CRC32();
+            crc.update(text);
+            stored.setCrc(crc.getValue());
+            zos.putNextEntry(stored);
+            zos.write(text);
+            zos.closeEntry();
+        }
+
+        ArchiveWriter writer = new ArchiveWriter(2, new SystemStreamLog());
+        writer.setStored(new String[] {"**/*.jar"});
+        writer.addArchive(expanded.toFile(), EntryMatcher.ALL);
+        writer.addArchive(jar.toFile(), EntryMatcher.ALL);
+        Path archive = dir.resolve("stored.jar");
+        writer.write(archive.toFile());
+        assertEquals(1, writer.getStoredEntries());
+        assertEquals(nested.length, writer.getStoredBytes());
+        try (ZipFile zf = new ZipFile(archive.toFile())) {
+            assertEquals(ZipEntry.STORED, zf.getEntry("lib/nested.jar").getMethod());
+            assertEquals(ZipEntry.DEFLATED, zf.getEntry("b.txt").getMethod());
+            assertEquals(ZipEntry.DEFLATED, zf.getEntry("fwk/F0.class").getMethod());
+            assertArrayEquals(nested, read(zf, "lib/nested.jar"));
+            assertArrayEquals(text, read(zf, "b.txt"));
+        }
+
+        writer = new ArchiveWriter(2, new SystemStreamLog());
+        writer.setLevel(0);
+        writer.addArchive(expanded.toFile(), EntryMatcher.ALL);
+        writer.addArchive(jar.toFile(), EntryMatcher.ALL);
+        writer.write(archive.toFile());
+        try (ZipFile zf = new ZipFile(archive.toFile())) {
+            zf.stream().forEach(e -> assertEquals(ZipEntry.STORED, e.getMethod(), e.getName()));
+            assertArrayEquals(nested, read(zf, "lib/nested.jar"));
+        }
+    }
+
+    @Test
+    void nestedArchivesStreamedIntoTheirEntry() throws IOException {
+        byte[] expected = write(2);
+        Path copy = dir.resolve("target/app.jar");
+        ArchiveWriter writer = new ArchiveWriter(2, new SystemStreamLog());
+        writer.setStored(new String[] {"**/*.jar"});
+        writer.addNested("app.jar", writer(2), copy.toFile());
+        writer.addFile(jar.toFile(), "lib/fwk.jar");
+        Path archive = dir.resolve("app.ear");
+        writer.write(archive.toFile());
+        assertEquals(2, writer.getStoredEntries());
+        assertEquals(expected.length + Files.size(jar), writer.getStoredBytes());
+        assertArrayEquals(expected, Files.readAllBytes(copy), "written to the target too");
+        try (ZipFile zf = new ZipFile(archive.toFile())) {
+            assertEquals(ZipEntry.STORED, zf.getEntry("app.jar").getMethod());
+            assertEquals(expected.length, zf.getEntry("app.jar").getSize());
+            assertArrayEquals(expected, read(zf, "app.jar"));
+        }
+
+        // a stream cannot go back to the header of a stored entry
+        writer = new ArchiveWriter(2, new SystemStreamLog());
+        writer.setStored(new String[] {"**/*.jar"});
+        writer.addNested("app.jar", writer(2), null);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        writer.write(baos, "app.ear");
+        assertEquals(baos.size(), writer.getWrittenBytes());
+        Files.write(archive, baos.toByteArray());
+        try (ZipFile zf = new ZipFile(archive.toFile())) {
+            assertEquals(ZipEntry.DEFLATED, zf.getEntry("app.jar").getMethod());
+            assertArrayEquals(expected, read(zf, "app.jar"));
+        }
+    }
+
+    @Test
+    void linkedOnlyUnderLinkRoot() throws IOException {
+        Path target = dir.resolve("target");
+        Path built = target.resolve("classes/app/Built.class");
+        write(built, "built".getBytes(StandardCharsets.UTF_8));
+        byte[] c0 = Files.readAllBytes(classes.resolve("app/p0/C0.class"));
+        byte[] c1 = Files.readAllBytes(classes.resolve("app/p1/C1.class"));
+        Path exploded = target.resolve("exploded");
+        // left by a build which linked every file
+        Files.createDirectories(exploded.resolve("app/p1"));
+        Files.createLink(exploded.resolve("app/p1/C1.class"), classes.resolve("app/p1/C1.class"));
+
+        ArchiveWriter writer = new ArchiveWriter(1, new SystemStreamLog());
+        writer.setLinkRoot(target);
+        writer.addDirectory(classes.toFile(), EntryMatcher.ALL);
+        writer.addFile(built.toFile(), "app/Built.class");
+        writer.writeDirectory(exploded, List.of());
+        assertEquals(1, writer.getLinkedEntries());
+        assertTrue(Files.isSameFile(built, exploded.resolve("app/Built.class")));
+        assertFalse(Files.isSameFile(classes.resolve("app/p1/C1.class"), exploded.resolve("app/p1/C1.class")));
+
+        // a write to the exploded directory leaves files of other directories untouched
+        Files.write(exploded.resolve("app/p0/C0.class"), "changed".getBytes(StandardCharsets.UTF_8));
+        Files.write(exploded.resolve("app/p1/C1.class"), "changed".getBytes(StandardCharsets.UTF_8));
+        assertArrayEquals(c0, Files.readAllBytes(classes.resolve("app/p0/C0.class")));
+        assertArrayEquals(c1, Files.readAllBytes(classes.resolve("app/p1/C1.class")));
+    }
+
+    private ArchiveWriter writer(int threads) throws IOException {
+        ArchiveWriter writer = new ArchiveWriter(threads, new SystemStreamLog());
+        writer.setTimestamp(TIMESTAMP);
+        writer.addContent(ArchiveWriter.MANIFEST, "Manifest-Version: 1.0\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+        writer.addDirectory(classes.toFile(), EntryMatcher.ALL);
+        writer.addArchive(jar.toFile(), EntryMatcher.ALL);
+        return writer;
+    }
+
+    private byte[] write(int threads) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        writer(threads).write(baos, "app.jar");
+        return baos.toByteArray();
+    }
+
+    private static byte[] read(ZipFile zf, String name) throws IOException {
+        try (InputStream is = zf.getInputStream(zf.getEntry(name))) {
+            return is.readAllBytes();
+        }
+    }
+
+    // half compressible, like class files
+    private static byte[] content(Random random, int size) {
+        byte[] content = new byte[size];
+        random.nextBytes(content);
+        for (int i = 0; i < size / 2; i++) {
+            content[i] = (byte) ('a' + i % 16);
+        }
+        return content;
+    }
+
+    private static void write(Path file, byte[] content) throws IOException {
+        Files.createDirectories(file.getParent());
+        try (OutputStream os = Files.newOutputStream(file)) {
+            os.write(content);
+        }
+    }
+}
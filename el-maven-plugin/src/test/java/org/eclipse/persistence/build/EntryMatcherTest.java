@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2022 Oracle and/or its affiliates. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0,
+ * or the Eclipse Distribution License v. 1.0 which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR BSD-3-Clause
+ */
+
+package org.eclipse.persistence.build;
+
+import org.codehaus.plexus.util.SelectorUtils;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EntryMatcherTest {
+
+    private static final List<String> PATTERNS = List.of(
+            "**", "*", "**/*", "*.class", "**/*.class", "**/*.jar",
+            "META-INF/persistence.xml", "META-INF/**", "META-INF/", "**/META-INF/**", "META-INF/*.xml",
+            "org/**/TestRunner*.class", "org/eclipse/**", "org/eclipse/*/Test?.class", "**/Test?Runner.class",
+            "**/server/**", "**/server/*Bean.class", "a/**/b/**/c.txt", "**/**/x", "*/*",
+            "/META-INF/**", "/a.txt", "org\\eclipse\\**",
+            "%ant[**/*.class]", "%ant[META-INF/]",
+            "%regex[.*TestRunner[0-9].*]", "%regex[org/.*\\.class]", "%regex[[^/]*]"
+    );
+
+    private static final List<String> NAMES = List.of(
+            "a.txt", "A.class", "META-INF/", "META-INF/MANIFEST.MF", "META-INF/persistence.xml", "META-INF/sub/orm.xml",
+            "x/META-INF/services/a.B", "org/", "org/eclipse/", "org/eclipse/persistence/Test1.class",
+            "org/eclipse/persistence/testing/framework/jpa/server/TestRunner.class",
+            "org/eclipse/persistence/testing/framework/jpa/server/TestRunner1Bean.class",
+            "org/eclipse/persistence/testing/framework/jpa/server/GenericTestRunner.class",
+            "org/eclipse/persistence/testing/framework/jpa/server/Test1Runner.class",
+            "lib/junit.jar", "a/b/c.txt", "a/x/b/y/c.txt", "a/c.txt", "x", "y/x", "y/z/x", "a//b", "/a.txt", "/META-INF/x"
+    );
+
+    @Test
+    void sameAsSelectorUtils() {
+        for (String pattern : PATTERNS) {
+            EntryMatcher matcher = EntryMatcher.of(new String[] {pattern}, null);
+            for (String name : NAMES) {
+                assertEquals(selectorUtils(pattern, name), matcher.matches(name), () -> pattern + " ~ " + name);
+            }
+        }
+    }
+
+    @Test
+    void excludes() {
+        EntryMatcher matcher = EntryMatcher.of(new String[] {"org/**"}, new String[] {"%regex[.*TestRunner[0-9].*]", "**/*Generic*"});
+        assertTrue(matcher.matches("org/eclipse/persistence/testing/framework/jpa/server/TestRunner.class"));
+        assertFalse(matcher.matches("org/eclipse/persistence/testing/framework/jpa/server/TestRunner1Bean.class"));
+        assertFalse(matcher.matches("org/eclipse/persistence/testing/framework/jpa/server/GenericTestRunner.class"));
+        assertFalse(matcher.matches("META-INF/MANIFEST.MF"));
+        assertTrue(EntryMatcher.exclude("**/*.jar").matches("a.txt"));
+        assertFalse(EntryMatcher.exclude("**/*.jar").matches("lib/junit.jar"));
+    }
+
+    @Test
+    void all() {
+        assertTrue(EntryMatcher.ALL.isAll());
+        assertSame(EntryMatcher.ALL, EntryMatcher.of(new String[0], new String[] {" "}));
+        assertFalse(EntryMatcher.exclude("x").isAll());
+        for (String name : NAMES) {
+            assertTrue(EntryMatcher.ALL.matches(name));
+        }
+    }
+
+    @Test
+    void without() {
+        EntryMatcher base = EntryMatcher.of(new String[] {"org/**"}, new String[] {"**/*Generic*"});
+        EntryMatcher pruned = base.without(List.of("org/a/A.class", "org/b/B.class"));
+        assertTrue(pruned.matches("org/a/C.class"));
+        assertFalse(pruned.matches("org/a/A.class"));
+        assertFalse(pruned.matches("org/b/B.class"));
+        assertFalse(pruned.matches("org/GenericA.class"));
+        assertFalse(pruned.isAll());
+        assertFalse(EntryMatcher.ALL.without(List.of("x")).isAll());
+        assertSame(base, base.without(List.of()));
+        assertEquals(pruned.toString(), base.without(List.of("org/b/B.class", "org/a/A.class")).toString());
+        assertTrue(pruned.toString().startsWith(base + ", without=2 names "));
+    }
+
+    @Test
+    void split() {
+        assertArrayEquals(new String[0], EntryMatcher.split(null));
+        assertArrayEquals(new String[0], EntryMatcher.split(" "));
+        assertArrayEquals(new String[] {"a/**", "b"}, EntryMatcher.split(" a/** , b,"));
+        assertArrayEquals(new String[] {"%regex[a{1,2}]", "%ant[x,y]", "c"}, EntryMatcher.split("%regex[a{1,2}],%ant[x,y],c"));
+        assertArrayEquals(new String[] {"%regex[[a,b]]", "d"}, EntryMatcher.split("%regex[[a,b]],d"));
+    }
+
+    // the way the plexus archiver matches includes of file sets
+    private static boolean selectorUtils(String pattern, String name) {
+        String p = pattern;
+        if (!p.startsWith("%regex[")) {
+            p = p.replace('\\', '/');
+            if (p.endsWith("/")) {
+                p += "**";
+            } else if (p.startsWith("%ant[") && p.endsWith("/]")) {
+                p = p.substring(0, p.length() - 1) + "**]";
+            }
+        }
+        return SelectorUtils.matchPath(p, name, "/", true);
+    }
+}
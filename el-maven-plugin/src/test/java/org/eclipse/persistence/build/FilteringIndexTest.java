@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2022 Oracle and/or its affiliates. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0,
+ * or the Eclipse Distribution License v. 1.0 which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR BSD-3-Clause
+ */
+
+package org.eclipse.persistence.build;
+
+import org.apache.maven.execution.DefaultMavenExecutionRequest;
+import org.apache.maven.execution.DefaultMavenExecutionResult;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Resource;
+import org.apache.maven.project.MavenProject;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Checks that only files referencing changed values, changed files and files with missing outputs
+ * are filtered again, and that outputs of removed files are deleted.
+ */
+class FilteringIndexTest {
+
+    private static final Pattern EXPRESSION = Pattern.compile("\\$\\{([^}]+)}|@([^@\\s]+)@");
+
+    @TempDir
+    Path dir;
+
+    private Path conf;
+    private Path dest;
+    private Properties properties;
+    private MavenProject project;
+    private MavenSession session;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        conf = Files.createDirectories(dir.resolve("conf"));
+        dest = dir.resolve("work/conf");
+        Files.writeString(conf.resolve("a.properties"), "a=@a@\n");
+        Files.writeString(conf.resolve("b.xml"), "<b>${b}</b>\n");
+        Files.createDirectories(conf.resolve("META-INF"));
+        Files.writeString(conf.resolve("META-INF/c.xml"), "<c>@a@ ${b}</c>\n");
+        Files.writeString(conf.resolve("d.txt"), "no expressions\n");
+        properties = new Properties();
+        properties.setProperty("a", "1");
+        properties.setProperty("b", "2");
+        project = new MavenProject(new Model());
+        session = new MavenSession(null, new DefaultRepositorySystemSession(), new DefaultMavenExecutionRequest(),
+                new DefaultMavenExecutionResult());
+    }
+
+    @Test
+    void unchanged() throws IOException {
+        assertEquals(Set.of("a.properties", "b.xml", "META-INF/c.xml", "d.txt"), filter());
+        assertEquals(Set.of(), filter());
+        assertEquals("<c>1 2</c>\n", Files.readString(dest.resolve("META-INF/c.xml")));
+    }
+
+    @Test
+    void changedValue() throws IOException {
+        filter();
+        properties.setProperty("a", "3");
+        assertEquals(Set.of("a.properties", "META-INF/c.xml"), filter());
+        assertEquals("a=3\n", Files.readString(dest.resolve("a.properties")));
+        properties.setProperty("b", "4");
+        assertEquals(Set.of("b.xml", "META-INF/c.xml"), filter());
+        assertEquals("<c>3 4</c>\n", Files.readString(dest.resolve("META-INF/c.xml")));
+        // values of other expressions do not matter
+        properties.setProperty("e", "5");
+        assertEquals(Set.of(), filter());
+    }
+
+    @Test
+    void changedFile() throws IOException {
+        filter();
+        Files.writeString(conf.resolve("d.txt"), "changed\n");
+        assertEquals(Set.of("d.txt"), filter());
+    }
+
+    @Test
+    void missingOutput() throws IOException {
+        filter();
+        Files.delete(dest.resolve("a.properties"));
+        assertEquals(Set.of("a.properties"), filter());
+    }
+
+    @Test
+    void staleOutputRemoved() throws IOException {
+        filter();
+        Files.delete(conf.resolve("META-INF/c.xml"));
+        assertEquals(Set.of(), filter());
+        assertFalse(Files.exists(dest.resolve("META-INF/c.xml")));
+        assertEquals(Set.of("a.properties", "b.xml", "d.txt"), outputs());
+    }
+
+    @Test
+    void failedFilteringNotRemembered() throws IOException {
+        filter();
+        properties.setProperty("a", "3");
+        FilteringIndex index = new FilteringIndex(dest, project, session, new PropertiesValueSource(properties), "UTF-8");
+        assertEquals(2, index.getModified(List.of(resource())).stream().mapToInt(r -> r.getIncludes().size()).sum());
+        // not stored, outputs may be partially written and the next build filters all files again
+        assertEquals(Set.of("a.properties", "b.xml", "META-INF/c.xml", "d.txt"), filter());
+    }
+
+    // filters modified resources as the maven resources filtering does, returns names of written outputs
+    private Set<String> filter() throws IOException {
+        FilteringIndex index = new FilteringIndex(dest, project, session, new PropertiesValueSource(properties), "UTF-8");
+        Set<String> written = new TreeSet<>();
+        for (Resource r : index.getModified(List.of(resource()))) {
+            for (String name : r.getIncludes()) {
+                String content = Files.readString(Path.of(r.getDirectory(), name), StandardCharsets.UTF_8);
+                Matcher m = EXPRESSION.matcher(content);
+                StringBuilder sb = new StringBuilder();
+                while (m.find()) {
+                    String value = properties.getProperty(m.group(1) != null ? m.group(1) : m.group(2));
+                    m.appendReplacement(sb, Matcher.quoteReplacement(value));
+                }
+                m.appendTail(sb);
+                Path out = dest.resolve(name);
+                Files.createDirectories(out.getParent());
+                Files.writeString(out, sb, StandardCharsets.UTF_8);
+                written.add(name);
+            }
+        }
+        index.store();
+        assertEquals(written.size(), index.getModified());
+        assertEquals(outputs().size(), index.getTotal());
+        return written;
+    }
+
+    private Set<String> outputs() throws IOException {
+        Set<String> result = new TreeSet<>();
+        try (Stream<Path> s = Files.walk(dest)) {
+            s.filter(Files::isRegularFile).forEach(p -> result.add(dest.relativize(p).toString().replace('\\', '/')));
+        }
+        return result;
+    }
+
+    private Resource resource() {
+        Resource r = new Resource();
+        r.setDirectory(conf.toString());
+        r.setFiltering(true);
+        return r;
+    }
+}
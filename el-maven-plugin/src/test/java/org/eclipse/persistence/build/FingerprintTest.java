@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2022 Oracle and/or its affiliates. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0,
+ * or the Eclipse Distribution License v. 1.0 which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR BSD-3-Clause
+ */
+
+package org.eclipse.persistence.build;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that packaging is skipped only when none of the inputs changed and all outputs exist.
+ */
+class FingerprintTest {
+
+    @TempDir
+    Path dir;
+
+    private Path stamp;
+    private Path jar;
+    private Path conf;
+    private Path output;
+    private Properties properties;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        stamp = dir.resolve("work/app.fingerprint");
+        jar = Files.writeString(dir.resolve("fwk.jar"), "framework");
+        conf = Files.createDirectories(dir.resolve("conf"));
+        Files.writeString(conf.resolve("a.properties"), "a=@a@");
+        output = Files.writeString(dir.resolve("app.ear"), "ear");
+        properties = new Properties();
+        properties.setProperty("a", "1");
+        properties.setProperty("b", "2");
+    }
+
+    @Test
+    void upToDate() throws IOException {
+        assertFalse(fingerprint("EAR").isUpToDate(outputs()), "never stored");
+        fingerprint("EAR").store();
+        assertTrue(fingerprint("EAR").isUpToDate(outputs()));
+        assertEquals(fingerprint("EAR").getValue(), fingerprint("EAR").getValue());
+    }
+
+    @Test
+    void changedParameter() throws IOException {
+        fingerprint("EAR").store();
+        assertFalse(fingerprint("EJB").isUpToDate(outputs()));
+    }
+
+    @Test
+    void changedProperty() throws IOException {
+        fingerprint("EAR").store();
+        properties.setProperty("b", "3");
+        assertFalse(fingerprint("EAR").isUpToDate(outputs()), "changed value");
+        properties.setProperty("b", "2");
+        assertTrue(fingerprint("EAR").isUpToDate(outputs()));
+        properties.setProperty("c", "");
+        assertFalse(fingerprint("EAR").isUpToDate(outputs()), "added property");
+    }
+
+    @Test
+    void missingPropertyDiffersFromEmpty() {
+        Properties empty = new Properties();
+        empty.setProperty("key", "");
+        assertNotEquals(new Fingerprint(stamp).addProperties("p", new Properties(), List.of("key")).getValue(),
+                new Fingerprint(stamp).addProperties("p", empty, List.of("key")).getValue());
+    }
+
+    @Test
+    void changedFileSize() throws IOException {
+        fingerprint("EAR").store();
+        FileTime modified = Files.getLastModifiedTime(jar);
+        Files.writeString(jar, "framework2");
+        Files.setLastModifiedTime(jar, modified);
+        assertFalse(fingerprint("EAR").isUpToDate(outputs()));
+    }
+
+    @Test
+    void changedModificationTime() throws IOException {
+        fingerprint("EAR").store();
+        Path file = conf.resolve("a.properties");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 2000));
+        assertFalse(fingerprint("EAR").isUpToDate(outputs()), "file in a directory");
+        fingerprint("EAR").store();
+        Files.setLastModifiedTime(jar, FileTime.fromMillis(Files.getLastModifiedTime(jar).toMillis() + 2000));
+        assertFalse(fingerprint("EAR").isUpToDate(outputs()), "file");
+    }
+
+    @Test
+    void addedAndRemovedFile() throws IOException {
+        fingerprint("EAR").store();
+        Path added = Files.writeString(conf.resolve("b.properties"), "b");
+        assertFalse(fingerprint("EAR").isUpToDate(outputs()));
+        fingerprint("EAR").store();
+        Files.delete(added);
+        assertFalse(fingerprint("EAR").isUpToDate(outputs()));
+        Files.delete(jar);
+        assertFalse(fingerprint("EAR").isUpToDate(outputs()), "missing input");
+    }
+
+    @Test
+    void missingOutput() throws IOException {
+        fingerprint("EAR").store();
+        Files.delete(output);
+        assertFalse(fingerprint("EAR").isUpToDate(outputs()));
+    }
+
+    @Test
+    void invalidated() throws IOException {
+        fingerprint("EAR").store();
+        // a failed packaging must not leave the previous fingerprint behind
+        fingerprint("EAR").invalidate();
+        assertFalse(fingerprint("EAR").isUpToDate(outputs()));
+    }
+
+    @Test
+    void computedOnce() {
+        Fingerprint fingerprint = fingerprint("EAR");
+        fingerprint.getValue();
+        assertThrows(IllegalStateException.class, () -> fingerprint.add("late", 1));
+    }
+
+    private Fingerprint fingerprint(String mode) {
+        try {
+            return new Fingerprint(stamp)
+                    .add("mode", mode)
+                    .add("threads", true)
+                    .addProperties(properties)
+                    .addFile("fwk", jar.toFile())
+                    .addFile("ejbConf", conf.toFile());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private List<File> outputs() {
+        return List.of(output.toFile());
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2022 Oracle and/or its affiliates. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0,
+ * or the Eclipse Distribution License v. 1.0 which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR BSD-3-Clause
+ */
+
+package org.eclipse.persistence.build;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FrameworkPrunerTest {
+
+    private static final String SERVICE = "org/eclipse/persistence/build/Fingerprint.class";
+    private static final String MAIN = "org/eclipse/persistence/build/SharedLibrary.class";
+    private static final String UNUSED = "org/eclipse/persistence/build/PackagingEvents.class";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void servicesAndManifest() throws IOException {
+        Path fwk = dir.resolve("fwk.jar");
+        try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(fwk))) {
+            // the value is wrapped like manifests wrap long lines
+            put(zos, "META-INF/MANIFEST.MF", "Manifest-Version: 1.0\r\nMain-Class: org.eclipse.persistence.buil\r\n d.SharedLibrary\r\n\r\n"
+                    .getBytes(StandardCharsets.UTF_8));
+            put(zos, "META-INF/services/java.sql.Driver", "# provider\norg.eclipse.persistence.build.Fingerprint\n"
+                    .getBytes(StandardCharsets.UTF_8));
+            for (String c : List.of(SERVICE, MAIN, UNUSED)) {
+                try (InputStream is = getClass().getClassLoader().getResourceAsStream(c)) {
+                    put(zos, c, is.readAllBytes());
+                }
+            }
+        }
+        Set<String> unreachable = new FrameworkPruner(new SystemStreamLog())
+                .getUnreachable(fwk.toFile(), EntryMatcher.ALL, EntryMatcher.exclude("**"), List.of(), List.of());
+        assertEquals(Set.of(UNUSED), unreachable);
+    }
+
+    private static void put(ZipOutputStream zos, String name, byte[] content) throws IOException {
+        zos.putNextEntry(new ZipEntry(name));
+        zos.write(content);
+        zos.closeEntry();
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2022 Oracle and/or its affiliates. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0,
+ * or the Eclipse Distribution License v. 1.0 which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR BSD-3-Clause
+ */
+
+package org.eclipse.persistence.build;
+
+import org.codehaus.plexus.interpolation.ValueSource;
+import org.junit.jupiter.api.Test;
+
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PropertiesValueSourceTest {
+
+    @Test
+    void aliases() {
+        Properties props = new Properties();
+        props.setProperty("server.platform", "weblogic");
+        props.setProperty("db.platform", "Oracle");
+        props.setProperty("eclipselink.logging.level", "FINE");
+        for (ValueSource source : new ValueSource[] {new PropertiesValueSource(props), PropertiesValueSource.snapshot(props)}) {
+            assertEquals("weblogic", source.getValue("server-platform"));
+            assertEquals("org.eclipse.persistence.platform.server.wls.WebLogic_12_Platform", source.getValue("server-platform-class"));
+            assertEquals("Oracle", source.getValue("database-platform"));
+            assertEquals("fine", source.getValue("eclipselink.logging.level"));
+        }
+    }
+
+    @Test
+    void missingServerPlatform() {
+        Properties props = new Properties();
+        props.setProperty("db.platform", "Oracle");
+        assertNull(new PropertiesValueSource(props).getValue("server-platform-class"));
+        assertNull(new PropertiesValueSource(props).getValue("eclipselink.logging.level"));
+        ValueSource snapshot = PropertiesValueSource.snapshot(props);
+        assertEquals("Oracle", snapshot.getValue("database-platform"));
+        assertThrows(IllegalStateException.class, () -> snapshot.getValue("server-platform-class"));
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2022 Oracle and/or its affiliates. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0,
+ * or the Eclipse Distribution License v. 1.0 which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR BSD-3-Clause
+ */
+
+package org.eclipse.persistence.build;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Generator of a synthetic large reactor packaged by integration tests: modules with many persistence units
+ * depending on a large framework with test runners, on model jars and on test jars, all of them installed
+ * in a local file repository. The content is the same for every run.
+ * <p>
+ * Arguments: the directory of the reactor, the local repository and names of modules of the reactor.
+ */
+public final class ReactorFixture {
+
+    static final String GROUP_ID = "org.eclipse.persistence";
+    static final String VERSION = "1.0";
+    static final String RUNNERS_PACKAGE = "org/eclipse/persistence/testing/framework/jpa/server/";
+
+    private static final int FWK_CLASSES = 20000;
+    private static final int MODEL_CLASSES = 1000;
+    private static final int TEST_CLASSES = 500;
+    private static final int UNITS = 20;
+    private static final int CLASS_SIZE = 2048;
+
+    private final Path basedir;
+    private final Path repository;
+
+    private ReactorFixture(Path basedir, Path repository) {
+        this.basedir = basedir;
+        this.repository = repository;
+    }
+
+    public static void main(String... args) throws IOException {
+        if (args.length < 3) {
+            throw new IllegalArgumentException("usage: ReactorFixture <reactor> <repository> <module>...");
+        }
+        ReactorFixture fixture = new ReactorFixture(Paths.get(args[0]), Paths.get(args[1]));
+        fixture.frameworks();
+        for (String module : Arrays.asList(args).subList(2, args.length)) {
+            fixture.module(module);
+        }
+    }
+
+    /**
+     * Installs the jpa.test.framework with test runners, the core.test.framework and junit.
+     */
+    private void frameworks() throws IOException {
+        List<String> runners = new ArrayList<>(List.of(RUNNERS_PACKAGE + "TestRunner.class",
+                RUNNERS_PACKAGE + "GenericTestRunner.class", RUNNERS_PACKAGE + "SingleUnitTestRunnerBean.class"));
+        for (int i = 1; i <= 10; i++) {
+            runners.add(RUNNERS_PACKAGE + "TestRunner" + i + ".class");
+            runners.add(RUNNERS_PACKAGE + "TestRunner" + i + "Bean.class");
+        }
+        install("org.eclipse.persistence.jpa.test.framework", null, "org/eclipse/persistence/testing/framework/jpa/",
+                FWK_CLASSES, runners);
+        install("org.eclipse.persistence.core.test.framework", null, "org/eclipse/persistence/testing/framework/",
+                FWK_CLASSES / 2, List.of());
+        install("junit", null, "junit/", 200, List.of());
+    }
+
+    /**
+     * Installs model and test jars of the module and writes its project.
+     */
+    private void module(String module) throws IOException {
+        String pkg = "org/eclipse/persistence/testing/" + module.replace('-', '_') + "/";
+        install(module + ".model", "model", pkg + "model/", MODEL_CLASSES, List.of());
+        install(module + ".tests", "tests", pkg + "tests/", TEST_CLASSES, List.of());
+        Path dir = basedir.resolve(module);
+        write(dir.resolve("pom.xml"), "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<project xmlns=\"http://maven.apache.org/POM/4.0.0\">\n"
+                + "    <modelVersion>4.0.0</modelVersion>\n"
+                + "    <parent>\n"
+                + "        <groupId>" + GROUP_ID + ".it</groupId>\n"
+                + "        <artifactId>large-reactor</artifactId>\n"
+                + "        <version>" + VERSION + "</version>\n"
+                + "    </parent>\n"
+                + "    <artifactId>" + module + "</artifactId>\n"
+                + "    <dependencies>\n"
+                + dependency(module + ".model", "<classifier>model</classifier>")
+                + dependency(module + ".tests", "<classifier>tests</classifier><type>test-jar</type>")
+                + "    </dependencies>\n"
+                + "    <build>\n"
+                + "        <plugins>\n"
+                + "            <plugin>\n"
+                + "                <groupId>" + GROUP_ID + "</groupId>\n"
+                + "                <artifactId>eclipselink-testbuild-plugin</artifactId>\n"
+                + "                <executions>\n"
+                + "                    <execution>\n"
+                + "                        <goals>\n"
+                + "                            <goal>package-testapp</goal>\n"
+                + "                        </goals>\n"
+                + "                    </execution>\n"
+                + "                </executions>\n"
+                + "            </plugin>\n"
+                + "        </plugins>\n"
+                + "    </build>\n"
+                + "</project>\n");
+        write(dir.resolve("src/main/resources/META-INF/persistence.xml"), persistenceXml(pkg.replace('/', '.')));
+    }
+
+    private static String dependency(String artifactId, String extra) {
+        return "        <dependency>\n"
+                + "            <groupId>" + GROUP_ID + "</groupId>\n"
+                + "            <artifactId>" + artifactId + "</artifactId>\n"
+                + "            <version>" + VERSION + "</version>\n"
+                + "            " + extra + "\n"
+                + "        </dependency>\n";
+    }
+
+    private static String persistenceXml(String pkg) {
+        StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+                .append("<persistence xmlns=\"https://jakarta.ee/xml/ns/persistence\" version=\"3.0\">\n");
+        for (int i = 0; i < UNITS; i++) {
+            sb.append("    <persistence-unit name=\"pu").append(i).append("\" transaction-type=\"RESOURCE_LOCAL\">\n");
+            for (int c = 0; c < 10; c++) {
+                sb.append("        <class>").append(pkg).append("model.p").append(i).append(".C").append(c).append("</class>\n");
+            }
+            sb.append("        <exclude-unlisted-classes>true</exclude-unlisted-classes>\n")
+                    .append("        <properties>\n")
+                    .append("            <property name=\"eclipselink.logging.level\" value=\"@eclipselink.logging.level@\"/>\n")
+                    .append("        </properties>\n")
+                    .append("    </persistence-unit>\n");
+        }
+        return sb.append("</persistence>\n").toString();
+    }
+
+    /**
+     * Installs the jar of the given number of classes spread over packages of 50 classes, with the given entries,
+     * and its pom in the local repository.
+     */
+    private void install(String artifactId, String classifier, String prefix, int classes, List<String> extra) throws IOException {
+        Path dir = repository.resolve(GROUP_ID.replace('.', '/')).resolve(artifactId).resolve(VERSION);
+        String name = artifactId + "-" + VERSION;
+        write(dir.resolve(name + ".pom"), "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<project xmlns=\"http://maven.apache.org/POM/4.0.0\">\n"
+                + "    <modelVersion>4.0.0</modelVersion>\n"
+                + "    <groupId>" + GROUP_ID + "</groupId>\n"
+                + "    <artifactId>" + artifactId + "</artifactId>\n"
+                + "    <version>" + VERSION + "</version>\n"
+                + "</project>\n");
+        Path jar = dir.resolve(name + (classifier == null ? "" : "-" + classifier) + ".jar");
+        Random random = new Random(jar.getFileName().toString().hashCode());
+        try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(jar))) {
+            for (int i = 0; i < classes; i++) {
+                zos.putNextEntry(new ZipEntry(String.format("%sp%d/C%d.class", prefix, i / 50, i)));
+                zos.write(content(random));
+                zos.closeEntry();
+            }
+            for (String entry : extra) {
+                zos.putNextEntry(new ZipEntry(entry));
+                zos.write(content(random));
+                zos.closeEntry();
+            }
+        }
+    }
+
+    // looks like a class file, half of it compressible
+    private static byte[] content(Random random) {
+        byte[] content = new byte[CLASS_SIZE];
+        random.nextBytes(content);
+        for (int i = 0; i < CLASS_SIZE / 2; i++) {
+            content[i] = (byte) ('a' + i % 16);
+        }
+        return content;
+    }
+
+    private static void write(Path file, String content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+    }
+}
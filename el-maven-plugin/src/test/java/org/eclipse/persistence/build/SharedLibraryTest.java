@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2022 Oracle and/or its affiliates. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0,
+ * or the Eclipse Distribution License v. 1.0 which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR BSD-3-Clause
+ */
+
+package org.eclipse.persistence.build;
+
+import org.apache.maven.archiver.MavenArchiveConfiguration;
+import org.apache.maven.execution.DefaultMavenExecutionRequest;
+import org.apache.maven.execution.DefaultMavenExecutionResult;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Build;
+import org.apache.maven.model.Model;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.archiver.jar.JarArchiver;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the {@code Class-Path} of modules of thin EARs and the bundle checksum recorded in the EAR.
+ */
+class SharedLibraryTest {
+
+    @TempDir
+    Path dir;
+
+    private List<File> libs;
+    private MavenProject project;
+    private MavenSession session;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Path junit = Files.createDirectories(dir.resolve("repo")).resolve("junit-1.0.jar");
+        Files.writeString(junit, "junit", StandardCharsets.UTF_8);
+        libs = List.of(junit.toFile());
+        Model model = new Model();
+        model.setGroupId("org.eclipse.persistence");
+        model.setArtifactId("app");
+        model.setVersion("1.0");
+        model.setBuild(new Build());
+        model.getBuild().setDirectory(dir.resolve("target").toString());
+        project = new MavenProject(model);
+        session = new MavenSession(null, new DefaultRepositorySystemSession(), new DefaultMavenExecutionRequest(),
+                new DefaultMavenExecutionResult());
+    }
+
+    @Test
+    void classPathAndChecksum() throws Exception {
+        SharedLibrary bundle = SharedLibrary.publish(dir.resolve("shared"), libs, new SystemStreamLog());
+        MavenArchiveConfiguration archive = new MavenArchiveConfiguration();
+        archive.setAddMavenDescriptor(false);
+        archive.addManifestEntry("Class-Path", "extra.jar");
+
+        Path ejb = create("app_ejb.jar", bundle.moduleArchive(archive, "/srv/el/lib", dir));
+        Path ear = create("app.ear", bundle.earArchive(archive));
+        assertEquals("extra.jar /srv/el/lib/junit-1.0.jar", manifest(ejb).getValue("Class-Path"));
+        assertEquals(bundle.getChecksum(), manifest(ear).getValue(PackagerMojo.SHARED_LIB_ATTRIBUTE));
+        List<String> recorded = Files.readAllLines(bundle.getDirectory().resolve(SharedLibrary.CHECKSUM_FILE));
+        assertEquals(bundle.getChecksum(), recorded.get(recorded.size() - 1));
+        assertTrue(Files.isRegularFile(bundle.getDirectory().resolve("junit-1.0.jar")));
+        // the configuration shared by archives is not changed
+        assertEquals("extra.jar", archive.getManifestEntries().get("Class-Path"));
+        assertEquals(null, archive.getManifestEntries().get(PackagerMojo.SHARED_LIB_ATTRIBUTE));
+    }
+
+    @Test
+    void relativeToExplodedEar() throws IOException {
+        SharedLibrary bundle = SharedLibrary.publish(dir.resolve("target/shared"), libs, new SystemStreamLog());
+        String classPath = bundle.getClassPath(null, dir.resolve("target/exploded/app.ear"));
+        assertEquals("../../shared/" + bundle.getDirectory().getFileName() + "/junit-1.0.jar", classPath);
+        assertEquals(bundle.getDirectory(), SharedLibrary.publish(dir.resolve("target/shared"), libs, new SystemStreamLog()).getDirectory());
+    }
+
+    private Path create(String name, MavenArchiveConfiguration archive) throws Exception {
+        Packager p = new Packager(new JarArchiver(), new SystemStreamLog());
+        Path dest = dir.resolve("target").resolve(name);
+        p.setTarget(dest.toFile());
+        p.setOutputTimestamp("2022-01-01T00:00:00Z");
+        p.setThreads(1);
+        p.setConfDir(dir.resolve("conf").toFile());
+        p.createArchive(project, session, null, archive);
+        return dest;
+    }
+
+    private static Attributes manifest(Path jar) throws IOException {
+        try (JarFile jf = new JarFile(jar.toFile())) {
+            return jf.getManifest().getMainAttributes();
+        }
+    }
+}
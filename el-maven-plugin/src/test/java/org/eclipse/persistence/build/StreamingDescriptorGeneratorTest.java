@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2022 Oracle and/or its affiliates. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0,
+ * or the Eclipse Distribution License v. 1.0 which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR BSD-3-Clause
+ */
+
+package org.eclipse.persistence.build;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks that descriptors generated by {@link StreamingDescriptorGenerator} are the same as those
+ * generated by the XSL transformations.
+ */
+class StreamingDescriptorGeneratorTest {
+
+    private static final String SINGLE = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<persistence xmlns=\"https://jakarta.ee/xml/ns/persistence\" version=\"3.0\">\n"
+            + "    <persistence-unit name=\"default\">\n"
+            + "        <class>app.Entity</class>\n"
+            + "    </persistence-unit>\n"
+            + "</persistence>\n";
+
+    private static final String MULTIPLE = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<!-- license -->\n"
+            + "<persistence xmlns=\"https://jakarta.ee/xml/ns/persistence\"\n"
+            + "             xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"\n"
+            + "             xsi:schemaLocation=\"https://jakarta.ee/xml/ns/persistence https://jakarta.ee/xml/ns/persistence/persistence_3_0.xsd\"\n"
+            + "             version=\"3.0\">\n"
+            + "    <!-- first unit -->\n"
+            + "    <persistence-unit name=\"pu1\" transaction-type=\"RESOURCE_LOCAL\">\n"
+            + "        <properties>\n"
+            + "            <property name=\"eclipselink.logging.level\" value=\"@eclipselink.logging.level@\"/>\n"
+            + "        </properties>\n"
+            + "        <exclude-unlisted-classes>true</exclude-unlisted-classes>\n"
+            + "        <class>app.A</class>\n"
+            + "        <class>app.B</class>\n"
+            + "        <jar-file>model.jar</jar-file>\n"
+            + "        <mapping-file>META-INF/orm.xml</mapping-file>\n"
+            + "        <provider>org.eclipse.persistence.jpa.PersistenceProvider</provider>\n"
+            + "        <description>first &amp; only</description>\n"
+            + "        <shared-cache-mode>NONE</shared-cache-mode>\n"
+            + "        <validation-mode>CALLBACK</validation-mode>\n"
+            + "    </persistence-unit>\n"
+            + "    <persistence-unit name=\"pu2\" transaction-type=\"JTA\">\n"
+            + "        <properties>\n"
+            + "            <property name=\"eclipselink.target-database\" value=\"Derby\"/>\n"
+            + "            <property name=\"eclipselink.target-server\" value=\"None\"/>\n"
+            + "            <property name=\"eclipselink.weaving\" value=\"false\"/>\n"
+            + "        </properties>\n"
+            + "    </persistence-unit>\n"
+            + "    <persistence-unit name=\"pu3\">\n"
+            + "        <properties/>\n"
+            + "    </persistence-unit>\n"
+            + "</persistence>\n";
+
+    private static final String LEGACY = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<persistence xmlns=\"http://java.sun.com/xml/ns/persistence\" version=\"2.0\">\n"
+            + "    <persistence-unit name=\"legacy\">\n"
+            + "        <properties>\n"
+            + "            <property name=\"eclipselink.weaving\" value=\"true\"/>\n"
+            + "            <property name=\"other\" value=\"a &lt; b\"/>\n"
+            + "        </properties>\n"
+            + "    </persistence-unit>\n"
+            + "</persistence>\n";
+
+    @TempDir
+    Path dir;
+
+    static Stream<Arguments> inputs() {
+        return Stream.of(
+                Arguments.of("single unit", SINGLE, "", null),
+                Arguments.of("single unit with runners", SINGLE, "TestRunner GenericTestRunner SingleUnitTestRunner", null),
+                Arguments.of("multiple units", MULTIPLE, "TestRunner GenericTestRunner", null),
+                Arguments.of("multiple units with shards", MULTIPLE, "TestRunner TestRunner1 TestRunner2 TestRunner3",
+                        "TestRunner1:app.ATest,app.BTest TestRunner2:app.CTest TestRunner3:"),
+                Arguments.of("legacy namespace", LEGACY, "TestRunner1 TestRunner2", "TestRunner2:app.ATest")
+        );
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("inputs")
+    void sameAsTransformations(String name, String persistenceXml, String runners, String runnerTests) throws Exception {
+        Path source = dir.resolve("persistence.xml");
+        Files.writeString(source, persistenceXml, StandardCharsets.UTF_8);
+        Map<String, Object> options = new HashMap<>();
+        options.put("generator.id", "test");
+        options.put("data-source-type", "jta-data-source");
+        options.put("data-source-name", "jdbc/EclipseLinkDS");
+        options.put("db.platform", "org.eclipse.persistence.platform.database.OraclePlatform");
+        options.put("server.platform", "WebLogic");
+        options.put("server.weaving", "static");
+        options.put("testRunners", runners);
+        if (runnerTests != null) {
+            options.put("runnerTests", runnerTests);
+        }
+
+        Path xslt = generate(source, false, options);
+        Path stax = generate(source, true, options);
+        for (Path descriptor : new Path[] {PackagerMojo.PERSISTENCE_DESC, PackagerMojo.EJB_DESC}) {
+            assertEquals(Files.readString(xslt.resolve(descriptor), StandardCharsets.UTF_8),
+                    Files.readString(stax.resolve(descriptor), StandardCharsets.UTF_8), descriptor.toString());
+        }
+    }
+
+    private Path generate(Path source, boolean streaming, Map<String, Object> options) throws Exception {
+        Path dest = dir.resolve(streaming ? "stax" : "xslt");
+        DescriptorGenerator generator = new DescriptorGenerator(source, new SystemStreamLog());
+        generator.streaming(streaming);
+        assertEquals(2, generator.generate(dest, options));
+        return dest;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2022 Oracle and/or its affiliates. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0,
+ * or the Eclipse Distribution License v. 1.0 which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR BSD-3-Clause
+ */
+
+package org.eclipse.persistence.build;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that test classes are assigned longest first to the runner with the lowest total so far.
+ */
+class TestShardsTest {
+
+    private static final List<String> RUNNERS = List.of("TestRunner1", "TestRunner2", "TestRunner3");
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void longestFirstToLeastLoaded() throws IOException {
+        TestShards shards = history("A=7\nB=5\nC=4\nD=3\nE=3\nF=2\n");
+        Map<String, List<String>> assigned = shards.assign(RUNNERS, List.of("F", "E", "D", "C", "B", "A"));
+        // A, B and C to empty runners, D to the one of C (4s), E to the one of B (5s), F to the first of 7s
+        assertEquals(List.of("A", "F"), assigned.get("TestRunner1"));
+        assertEquals(List.of("B", "E"), assigned.get("TestRunner2"));
+        assertEquals(List.of("C", "D"), assigned.get("TestRunner3"));
+        assertEquals("TestRunner1:A,F TestRunner2:B,E TestRunner3:C,D", TestShards.format(assigned, " "));
+    }
+
+    @Test
+    void sameAssignmentForAnyOrder() throws IOException {
+        TestShards shards = history("A=2\nB=2\nC=2\nD=1\n");
+        assertEquals(shards.assign(RUNNERS, List.of("A", "B", "C", "D")), shards.assign(RUNNERS, List.of("D", "C", "B", "A")));
+    }
+
+    @Test
+    void averageWithoutHistory() throws IOException {
+        TestShards shards = history("A=9\nB=1\n");
+        // C and D take the average of 5s
+        Map<String, List<String>> assigned = shards.assign(List.of("TestRunner1", "TestRunner2"), List.of("A", "B", "C", "D"));
+        assertEquals(List.of("A", "B"), assigned.get("TestRunner1"));
+        assertEquals(List.of("C", "D"), assigned.get("TestRunner2"));
+    }
+
+    @Test
+    void noHistory() throws IOException {
+        TestShards shards = new TestShards(new SystemStreamLog());
+        shards.readHistory(dir.resolve("failsafe-reports").toFile());
+        assertFalse(shards.hasHistory());
+        Map<String, List<String>> assigned = shards.assign(RUNNERS, List.of("A", "B", "C", "D", "E", "F"));
+        assigned.values().forEach(tests -> assertEquals(2, tests.size(), assigned.toString()));
+    }
+
+    @Test
+    void longestReportWins() throws IOException {
+        Path reports = Files.createDirectories(dir.resolve("failsafe-reports"));
+        Files.writeString(reports.resolve("TEST-A.xml"), "<testsuite name=\"A\" time=\"1,234.5\" tests=\"1\"/>");
+        Files.writeString(reports.resolve("TEST-B.xml"), "<testsuite name=\"B\" time=\"2\" tests=\"1\"/>");
+        TestShards shards = new TestShards(new SystemStreamLog());
+        shards.readHistory(reports.toFile());
+        shards.readHistory(Files.writeString(dir.resolve("history.properties"), "B=3000\n").toFile());
+        assertTrue(shards.hasHistory());
+        Map<String, List<String>> assigned = shards.assign(List.of("TestRunner1", "TestRunner2"), List.of("A", "B", "C"));
+        assertEquals(List.of("B"), assigned.get("TestRunner1"));
+        // C takes the average of A and B
+        assertEquals(List.of("C", "A"), assigned.get("TestRunner2"));
+    }
+
+    private TestShards history(String properties) throws IOException {
+        TestShards shards = new TestShards(new SystemStreamLog());
+        shards.readHistory(Files.writeString(dir.resolve("history.properties"), properties).toFile());
+        return shards;
+    }
+}